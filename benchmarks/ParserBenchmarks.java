@@ -0,0 +1,169 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import parser.Parser;
+import parser.ParserFailureException;
+import parser.Program;
+import parser.Tokenizer;
+
+/**JMH benchmarks for Tokenizer and Parser throughput, and for decoding the
+ * binary format (Program.fromBytes) as the alternative to parsing.
+ * Run main (with JMH on the classpath) from the project root:
+ * it reports ops/s together with the allocation rate from the gc profiler.
+ * The programs directory can be changed with -Dprograms.dir=...*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations= 3, time= 1)
+@Measurement(iterations= 5, time= 1)
+@Fork(1)
+public class ParserBenchmarks {
+
+  /**Every file in the programs directory, the bad ones included:
+   * batch validation spends much of its time on failing programs.*/
+  @State(Scope.Benchmark)
+  public static class RealProgram{
+    @Param({"s0_bad1", "s0_bad2", "s0_bad3", "s0_bad4", "s0_full", "s0_provided", "s0_simple",
+      "s1_bad1", "s1_bad2", "s1_bad3", "s1_full", "s1_provided", "s1_simple",
+      "s2_bad1", "s2_bad2", "s2_bad3", "s2_bad4", "s2_bad5", "s2_bad6", "s2_bad7",
+      "s2_full", "s2_provided", "s2_simple",
+      "s3_bad1", "s3_bad2", "s3_bad3", "s3_full", "s3_noLocVar", "s3_simple"})
+    public String name;
+    public String text;
+    public byte[] bytes;
+    @Setup public void read() throws IOException{
+      var dir= Path.of(System.getProperty("programs.dir", "src/programs"));
+      text= Files.readString(dir.resolve(name + ".prog"));
+      bytes= encode(text);
+    }
+  }
+
+  /**Generated programs growing along one dimension at a time*/
+  @State(Scope.Benchmark)
+  public static class SyntheticProgram{
+    @Param({"statements", "nesting", "expressions"})
+    public String shape;
+    @Param({"10", "100", "1000"})
+    public int size;
+    public String text;
+    public byte[] bytes;
+    @Setup public void generate(){
+      text= switch (shape){
+        case "statements"  -> statements(size);
+        case "nesting"     -> nesting(size);
+        case "expressions" -> expressions(size);
+        default -> throw new IllegalArgumentException(shape);
+      };
+      bytes= encode(text);
+    }
+  }
+
+  /**A flat sequence of size groups of statements*/
+  static String statements(int size){
+    var res= new StringBuilder();
+    for (int i= 0; i < size; i++){
+      res.append("$x = add($x, ").append(i).append(");\n")
+        .append("if (lt($x, barrelLR(").append(i % 4).append("))) { move(2); } else { turnL; }\n")
+        .append("while (gt(fuelLeft, 50)) { wait; takeFuel; }\n");
+    }
+    return res.toString();
+  }
+
+  /**size nested blocks, alternating loop, if and while*/
+  static String nesting(int size){
+    var res= new StringBuilder();
+    for (int i= 0; i < size; i++){
+      res.append(switch (i % 3){
+        case 0  -> "loop {\n";
+        case 1  -> "if (eq(numBarrels, " + i + ")) {\n";
+        default -> "while (not(lt(wallDist, 1))) {\n";
+      });
+    }
+    res.append("move;\n");
+    res.append("}\n".repeat(size));
+    return res.toString();
+  }
+
+  /**A single move whose argument nests size arithmetic operations*/
+  static String expressions(int size){
+    String[] ops= {"add", "sub", "mul", "div"};
+    var res= new StringBuilder("move(");
+    for (int i= 0; i < size; i++){ res.append(ops[i % 4]).append("(oppLR, "); }
+    res.append("1");
+    res.append(")".repeat(size));
+    res.append(");\n");
+    return res.toString();
+  }
+
+  /**The program in the binary format; null if it does not parse, or is nested
+   * deeper than the binary format allows (nesting and expressions of size 1000)*/
+  static byte[] encode(String text){
+    try { return new Parser(text).parseIterative().toBytes(); }
+    catch (ParserFailureException | IllegalArgumentException e){ return null; }
+  }
+
+  @Benchmark public void parseReal(RealProgram p, Blackhole bh){ parse(p.text, bh); }
+
+  @Benchmark public void parseSynthetic(SyntheticProgram p, Blackhole bh){ parse(p.text, bh); }
+
+  @Benchmark public void parseSyntheticIterative(SyntheticProgram p, Blackhole bh){
+    try { bh.consume(new Parser(p.text).parseIterative()); }
+    catch (ParserFailureException pfe){ bh.consume(pfe); }
+  }
+
+  @Benchmark public void decodeReal(RealProgram p, Blackhole bh){ decode(p.bytes, bh); }
+
+  @Benchmark public void decodeSynthetic(SyntheticProgram p, Blackhole bh){ decode(p.bytes, bh); }
+
+  @Benchmark public void tokenizeReal(RealProgram p, Blackhole bh){ tokenize(p.text, bh); }
+
+  @Benchmark public void tokenizeSynthetic(SyntheticProgram p, Blackhole bh){ tokenize(p.text, bh); }
+
+  static void parse(String text, Blackhole bh){
+    try { bh.consume(new Parser(text).parse()); }
+    catch (ParserFailureException pfe){ bh.consume(pfe); }
+  }
+
+  /**Without bytes there is nothing to decode: the result is then meaningless*/
+  static void decode(byte[] bytes, Blackhole bh){
+    if (bytes != null){ bh.consume(Program.fromBytes(bytes)); }
+  }
+
+  /**Walks the tokens as the Parser does, by kind and offset: next() would
+   * allocate the text of every token, which the Parser avoids*/
+  static void tokenize(String text, Blackhole bh){
+    var t= new Tokenizer(text);
+    while (t.hasNext()){
+      bh.consume(t.mark());
+      t.next(t.peek());
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException{
+    var options= new OptionsBuilder()
+      .include(ParserBenchmarks.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build();
+    new Runner(options).run();
+  }
+}
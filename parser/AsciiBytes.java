@@ -0,0 +1,26 @@
+package parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// AsciiBytes shows the bytes of a buffer as characters, one byte per character.
+// This is the fast path for program files: the language is plain ASCII, so the
+// Tokenizer can lex the bytes of a (memory mapped) file directly, without
+// decoding them into a String first.
+// Bytes outside ASCII show up as Latin-1 characters; they are never part of a
+// valid token, so they can only end up in error messages.
+final class AsciiBytes implements CharSequence {
+  private final ByteBuffer bytes;
+  AsciiBytes(ByteBuffer bytes){ this.bytes= bytes; }
+
+  @Override public int length(){ return bytes.limit(); }
+  @Override public char charAt(int index){ return (char)(bytes.get(index) & 0xFF); }
+  @Override public CharSequence subSequence(int start, int end){
+    return new AsciiBytes(bytes.slice(start, end - start));
+  }
+  @Override public String toString(){
+    byte[] res= new byte[bytes.limit()];
+    bytes.get(0, res);
+    return new String(res, StandardCharsets.ISO_8859_1);
+  }
+}
@@ -0,0 +1,292 @@
+package parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// BinaryFormat writes a Program as a compact sequence of bytes, and reads it back.
+// A precompiled program is then loaded by decoding it, without lexing and parsing.
+//
+// Layout:
+//   magic 'R','P','B', version
+//   varint n, then n variable names (varint length + ASCII bytes)
+//   varint n, then n statements
+// Every node is one opcode byte followed by its children, in record component order.
+// Optional children (Move/Wait/BarrelLR/BarrelFB arguments, the else of If) use a
+// different opcode when absent. Numbers are zigzag varints; variables are varint
+// indexes in the name table (slots are not written: the indexes are read back as
+// slots). Blocks are the opcode, a varint count and the statements.
+// The constant conditions made by the Optimizer (Bool) are the opcodes no and yes.
+// Both directions recurse on the nesting, so programs nested deeper than maxDepth
+// nodes are rejected by the writer, and such input is invalid for the reader,
+// instead of risking either stack: maxDepth fits in a default (1MB) thread stack.
+final class BinaryFormat {
+  private BinaryFormat(){}
+  private static final byte[] magic= {'R','P','B', 1};
+  static final int maxDepth= 1000;
+
+  // opcodes
+  private static final int move= 1, moveArg= 2, turnL= 3, turnR= 4, turnAround= 5,
+    takeFuel= 6, wait= 7, waitArg= 8, shieldOn= 9, shieldOff= 10, loop= 11,
+    block= 12, ifThen= 13, ifElse= 14, whileDo= 15, ass= 16;
+  private static final int num= 32, var= 33, add= 34, sub= 35, mul= 36, div= 37,
+    fuelLeft= 38, oppLR= 39, oppFB= 40, numBarrels= 41, barrelLR= 42, barrelLRArg= 43,
+    barrelFB= 44, barrelFBArg= 45, wallDist= 46;
+  private static final int lt= 64, gt= 65, eq= 66, and= 67, or= 68, not= 69,
+    no= 70, yes= 71;
+
+  static byte[] write(Program p){ return new Writer().program(p); }
+
+  static Program read(byte[] bytes){ return new Reader(bytes).program(); }
+
+  private static final class Writer{
+    private byte[] out= new byte[256];
+    private int size= 0;
+    private final Map<String,Integer> names= new HashMap<>();
+    private final List<String> nameList= new ArrayList<>();
+    private int depth= 0;
+
+    byte[] program(Program p){
+      //the name table comes first, but is only known after the statements
+      for (Stm s: p.ss()){ stm(s); }
+      byte[] body= Arrays.copyOf(out, size);
+      out= new byte[body.length + 64];
+      size= 0;
+      for (byte b: magic){ put(b); }
+      varint(nameList.size());
+      for (String name: nameList){
+        byte[] bs= name.getBytes(StandardCharsets.US_ASCII);
+        varint(bs.length);
+        for (byte b: bs){ put(b); }
+      }
+      varint(p.ss().size());
+      for (byte b: body){ put(b); }
+      return Arrays.copyOf(out, size);
+    }
+
+    private void put(int b){
+      if (size == out.length){ out= Arrays.copyOf(out, size * 2); }
+      out[size++]= (byte) b;
+    }
+    private void varint(int v){
+      while ((v & ~0x7F) != 0){ put((v & 0x7F) | 0x80); v >>>= 7; }
+      put(v);
+    }
+    private void name(String name){
+      varint(names.computeIfAbsent(name, n->{ nameList.add(n); return nameList.size() - 1; }));
+    }
+    private void opExp(int op, Exp e){ put(op); exp(e); }
+    private void opExp(int op, Exp l, Exp r){ put(op); exp(l); exp(r); }
+    private void opCond(int op, Cond l, Cond r){ put(op); cond(l); cond(r); }
+    private void optional(int op, int opArg, Exp e){
+      if (e == null){ put(op); } else { opExp(opArg, e); }
+    }
+
+    private void enter(){
+      if (++depth > maxDepth){ throw new IllegalArgumentException("Nested deeper than "+maxDepth+" for the binary format"); }
+    }
+    private void stm(Stm s){
+      enter();
+      switch (s){
+        case Move m       -> optional(move, moveArg, m.steps());
+        case TurnL x      -> put(turnL);
+        case TurnR x      -> put(turnR);
+        case TurnAround x -> put(turnAround);
+        case TakeFuel x   -> put(takeFuel);
+        case Wait w       -> optional(wait, waitArg, w.time());
+        case ShieldOn x   -> put(shieldOn);
+        case ShieldOff x  -> put(shieldOff);
+        case Loop l       -> { put(loop); block(l.b()); }
+        case Block b      -> block(b);
+        case If i         -> {
+          put(i.otherwise() == null ? ifThen : ifElse);
+          cond(i.cond());
+          block(i.then());
+          if (i.otherwise() != null){ block(i.otherwise()); }
+        }
+        case While w      -> { put(whileDo); cond(w.cond()); block(w.body()); }
+        case Ass a        -> { put(ass); name(a.varName()); exp(a.value()); }
+        default -> throw new IllegalArgumentException("No binary format for "+s);
+      }
+      depth--;
+    }
+    private void block(Block b){
+      put(block);
+      varint(b.ss().size());
+      for (Stm s: b.ss()){ stm(s); }
+    }
+    private void exp(Exp e){
+      enter();
+      switch (e){
+        case Num n        -> { put(num); varint((n.inner() << 1) ^ (n.inner() >> 31)); }
+        case Var v        -> { put(var); name(v.name()); }
+        case Add a        -> opExp(add, a.left(), a.right());
+        case Sub s        -> opExp(sub, s.left(), s.right());
+        case Mul m        -> opExp(mul, m.left(), m.right());
+        case Div d        -> opExp(div, d.left(), d.right());
+        case FuelLeft x   -> put(fuelLeft);
+        case OppLR x      -> put(oppLR);
+        case OppFB x      -> put(oppFB);
+        case NumBarrels x -> put(numBarrels);
+        case BarrelLR b   -> optional(barrelLR, barrelLRArg, b.index());
+        case BarrelFB b   -> optional(barrelFB, barrelFBArg, b.index());
+        case WallDist x   -> put(wallDist);
+        case FastExp f    -> exp(f.source());
+        default -> throw new IllegalArgumentException("No binary format for "+e);
+      }
+      depth--;
+    }
+    private void cond(Cond c){
+      enter();
+      switch (c){
+        case Lt l  -> opExp(lt, l.left(), l.right());
+        case Gt g  -> opExp(gt, g.left(), g.right());
+        case Eq q  -> opExp(eq, q.left(), q.right());
+        case And a -> opCond(and, a.left(), a.right());
+        case Or o  -> opCond(or, o.left(), o.right());
+        case Not n -> { put(not); cond(n.cond()); }
+        case Bool b -> put(b.value() ? yes : no);
+        case FastCond f -> cond(f.source());
+        default -> throw new IllegalArgumentException("No binary format for "+c);
+      }
+      depth--;
+    }
+  }
+
+  private static final class Reader{
+    private final byte[] in;
+    private int pos= 0;
+    private String[] names;
+    private int depth= 0;//statements, expressions and conditions being decoded
+    Reader(byte[] in){ this.in= in; }
+
+    Program program(){
+      for (byte b: magic){
+        if (get() != (b & 0xFF)){ throw bad("not a binary program"); }
+      }
+      int count= varint();
+      if (count < 0 || count > in.length - pos){ throw bad("name table size "+count); }
+      names= new String[count];
+      for (int i= 0; i < names.length; i++){
+        int len= varint();
+        if (len < 0 || len > in.length - pos){ throw bad("truncated"); }
+        names[i]= new String(in, pos, len, StandardCharsets.US_ASCII);
+        pos += len;
+      }
+      int n= varint();
+      if (n < 0 || n > in.length - pos){ throw bad("program size "+n); }
+      var ss= new Stm[n];
+      for (int i= 0; i < n; i++){ ss[i]= stm(); }
+      if (pos != in.length){ throw bad("trailing bytes"); }
+      return new Program(List.of(ss));
+    }
+
+    private IllegalArgumentException bad(String msg){
+      return new IllegalArgumentException("Invalid binary program at byte "+pos+": "+msg);
+    }
+    private int get(){
+      if (pos == in.length){ throw bad("truncated"); }
+      return in[pos++] & 0xFF;
+    }
+    // Called on entering a node; the matching depth-- comes once the node is decoded
+    private void enter(){
+      if (++depth > maxDepth){ throw bad("nested too deeply"); }
+    }
+    private int varint(){
+      int res= 0;
+      for (int shift= 0; shift < 35; shift += 7){
+        int b= get();
+        res |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0){ return res; }
+      }
+      throw bad("varint too long");
+    }
+    // A variable index; the index in the name table is also the slot
+    private int slot(){
+      int i= varint();
+      if (i < 0 || i >= names.length){ throw bad("unknown variable "+i); }
+      return i;
+    }
+
+    private Stm stm(){
+      enter();
+      int op= get();
+      Stm res= switch (op){
+        case move       -> new Move(null);
+        case moveArg    -> new Move(exp());
+        case turnL      -> new TurnL();
+        case turnR      -> new TurnR();
+        case turnAround -> new TurnAround();
+        case takeFuel   -> new TakeFuel();
+        case wait       -> new Wait(null);
+        case waitArg    -> new Wait(exp());
+        case shieldOn   -> new ShieldOn();
+        case shieldOff  -> new ShieldOff();
+        case loop       -> new Loop(block());
+        case block      -> blockBody();
+        case ifThen     -> new If(cond(), block(), null);
+        case ifElse     -> new If(cond(), block(), block());
+        case whileDo    -> new While(cond(), block());
+        case ass        -> { int i= slot(); yield new Ass(names[i], i, exp()); }
+        default -> throw bad("statement opcode "+op);
+      };
+      depth--;
+      return res;
+    }
+    private Block block(){
+      if (get() != block){ throw bad("block expected"); }
+      return blockBody();
+    }
+    private Block blockBody(){
+      int n= varint();
+      if (n <= 0 || n > in.length - pos){ throw bad("block size "+n); }
+      var ss= new Stm[n];
+      for (int i= 0; i < n; i++){ ss[i]= stm(); }
+      return new Block(List.of(ss));
+    }
+    private Exp exp(){
+      enter();
+      int op= get();
+      Exp res= switch (op){
+        case num         -> { int z= varint(); yield new Num((z >>> 1) ^ -(z & 1)); }
+        case var         -> { int i= slot(); yield new Var(names[i], i); }
+        case add         -> new Add(exp(), exp());
+        case sub         -> new Sub(exp(), exp());
+        case mul         -> new Mul(exp(), exp());
+        case div         -> new Div(exp(), exp());
+        case fuelLeft    -> new FuelLeft();
+        case oppLR       -> new OppLR();
+        case oppFB       -> new OppFB();
+        case numBarrels  -> new NumBarrels();
+        case barrelLR    -> new BarrelLR(null);
+        case barrelLRArg -> new BarrelLR(exp());
+        case barrelFB    -> new BarrelFB(null);
+        case barrelFBArg -> new BarrelFB(exp());
+        case wallDist    -> new WallDist();
+        default -> throw bad("expression opcode "+op);
+      };
+      depth--;
+      return res;
+    }
+    private Cond cond(){
+      enter();
+      int op= get();
+      Cond res= switch (op){
+        case lt  -> new Lt(exp(), exp());
+        case gt  -> new Gt(exp(), exp());
+        case eq  -> new Eq(exp(), exp());
+        case and -> new And(cond(), cond());
+        case or  -> new Or(cond(), cond());
+        case not -> new Not(cond());
+        case no  -> new Bool(false);
+        case yes -> new Bool(true);
+        default -> throw bad("condition opcode "+op);
+      };
+      depth--;
+      return res;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package parser;
+
+/**A per-turn limit on the steps a robot program can execute.
+ * Program and Interpreter count a step per statement; Machine and CompiledProgram,
+ * where straight line code always ends, count a step per loop iteration.
+ * A program like while(eq(0,0)){ $x = 1; } never performs an action:
+ * without a budget, executing one turn of it never returns.
+ * When a turn runs out of budget the robot waits, and the program goes on from
+ * where it stopped on the next turn.
+ * A Budget also meters the steps executed and the turns cut short.
+ * It is not thread safe: use one Budget per running program.*/
+public final class Budget{
+  /**Steps per turn when none is specified: far more than any sensible turn needs*/
+  public static final int defaultPerTurn= 10_000;
+
+  private final int perTurn;
+  private long steps;
+  private long exhausted;
+
+  /**A budget of perTurn steps per turn; perTurn must be positive*/
+  public Budget(int perTurn){
+    if (perTurn <= 0){ throw new IllegalArgumentException("Budget per turn must be positive: "+perTurn); }
+    this.perTurn= perTurn;
+  }
+  /**A budget of defaultPerTurn steps per turn*/
+  public Budget(){ this(defaultPerTurn); }
+
+  public int perTurn(){ return perTurn; }
+
+  /**Steps executed so far, over all turns*/
+  public long steps(){ return steps; }
+
+  /**Turns that ran out of budget, and became a wait*/
+  public long exhausted(){ return exhausted; }
+
+  // Called by the engines
+  void step(){ steps++; }
+  void exhaust(){ exhausted++; }
+}
@@ -0,0 +1,209 @@
+package parser;
+
+import java.util.Arrays;
+//Notes to self
+// Bytecode is a Program compiled to a flat int[] of instructions, run by Machine.
+// Each instruction is an opcode, followed by its operand if it has one
+// (a number, a variable slot, named in 'names', a jump target or a flag).
+// Expressions and conditions work on an operand stack of ints; conditions push 0 or 1,
+// and both sides of and/or are evaluated, as Cond does.
+//
+// Control flow becomes jumps:
+//   loop{b}          L: b; jump L
+//   while(c){b}      L: c; jumpIfFalse E; b; jump L; E:
+//   if(c){b}else{o}  c; jumpIfFalse O; b; jump E; O: o; E:
+// A comparison that is directly the condition of an if/while is fused with
+// its jump (ifNotLt, ifNotGt, ifNotEq).
+// move(e) and wait(e) evaluate e once into the repeat counter of the Machine
+// (repeat), then moveRepeat/waitRepeat act once per turn until it runs out.
+public final class Bytecode {
+  // opcodes
+  static final int halt= 0, push= 1, load= 2, store= 3,
+    add= 4, sub= 5, mul= 6, div= 7,
+    fuelLeft= 8, oppLR= 9, oppFB= 10, numBarrels= 11, barrelLR= 12, barrelFB= 13, wallDist= 14,
+    lt= 15, gt= 16, eq= 17, and= 18, or= 19, not= 20,
+    jump= 21, jumpIfFalse= 22, ifNotLt= 23, ifNotGt= 24, ifNotEq= 25,
+    move= 26, turnL= 27, turnR= 28, turnAround= 29, takeFuel= 30, wait= 31,
+    repeat= 32, moveRepeat= 33, waitRepeat= 34, shield= 35;
+  private static final String[] mnemonics= {"halt", "push", "load", "store",
+    "add", "sub", "mul", "div",
+    "fuelLeft", "oppLR", "oppFB", "numBarrels", "barrelLR", "barrelFB", "wallDist",
+    "lt", "gt", "eq", "and", "or", "not",
+    "jump", "jumpIfFalse", "ifNotLt", "ifNotGt", "ifNotEq",
+    "move", "turnL", "turnR", "turnAround", "takeFuel", "wait",
+    "repeat", "moveRepeat", "waitRepeat", "shield"};
+  // whether the opcode is followed by an operand
+  static boolean hasOperand(int op){
+    return op == push || op == load || op == store || op == shield
+      || (op >= jump && op <= ifNotEq);
+  }
+
+  final int[] code;
+  final String[] names;   // variable names, by slot
+  final int maxStack;     // operand stack size needed by the code
+
+  private Bytecode(int[] code, String[] names, int maxStack){
+    this.code= code;
+    this.names= names;
+    this.maxStack= maxStack;
+  }
+
+  // Compiles the program. The program itself is not modified
+  public static Bytecode compile(Program p){ return new Compiler().program(p); }
+
+  // A new Machine at the start of this code; a Bytecode can be shared by many machines
+  public Machine start(){ return new Machine(this, null); }
+
+  // As start, with at most budget.perTurn() loop iterations per turn (see Machine)
+  public Machine start(Budget budget){ return new Machine(this, budget); }
+
+  // One instruction per line: offset, mnemonic and operand
+  @Override public String toString(){
+    var res= new StringBuilder();
+    for (int pc= 0; pc < code.length; pc++){
+      int op= code[pc];
+      res.append(pc).append(": ").append(mnemonics[op]);
+      if (hasOperand(op)){
+        int arg= code[++pc];
+        res.append(' ').append(op == load || op == store ? "$" + names[arg] : arg);
+      }
+      res.append('\n');
+    }
+    return res.toString();
+  }
+
+  private static final class Compiler{
+    private int[] out= new int[64];
+    private int size= 0;
+    private int depth= 0;
+    private int maxDepth= 0;
+    private String[] names= new String[0];
+
+    Bytecode program(Program p){
+      for (Stm s: p.ss()){ stm(s); }
+      emit(halt);
+      return new Bytecode(Arrays.copyOf(out, size), names, maxDepth);
+    }
+
+    private void put(int v){
+      if (size == out.length){ out= Arrays.copyOf(out, size * 2); }
+      out[size++]= v;
+    }
+    private void emit(int op){
+      put(op);
+      depth += switch (op){
+        case fuelLeft, oppLR, oppFB, numBarrels, wallDist -> 1;
+        case add, sub, mul, div, lt, gt, eq, and, or, jumpIfFalse, repeat -> -1;
+        case ifNotLt, ifNotGt, ifNotEq -> -2;
+        default -> 0;//barrelLR, barrelFB and not replace the top
+      };
+      maxDepth= Math.max(maxDepth, depth);
+    }
+    private void emit(int op, int arg){
+      emit(op);
+      put(arg);
+      if (op == push || op == load){ depth++; maxDepth= Math.max(maxDepth, depth); }
+      if (op == store){ depth--; }
+    }
+    // Emits a jump with a target to be patched; returns where the target goes
+    private int jumpForward(int op){
+      emit(op, -1);
+      return size - 1;
+    }
+    private void patch(int at){ out[at]= size; }
+    private int slot(int slot, String name){
+      if (slot >= names.length){ names= Arrays.copyOf(names, slot + 1); }
+      names[slot]= name;
+      return slot;
+    }
+
+    private void stm(Stm s){
+      switch (s){
+        case Move m       -> repeated(m.steps(), move, moveRepeat);
+        case TurnL x      -> emit(turnL);
+        case TurnR x      -> emit(turnR);
+        case TurnAround x -> emit(turnAround);
+        case TakeFuel x   -> emit(takeFuel);
+        case Wait w       -> repeated(w.time(), wait, waitRepeat);
+        case ShieldOn x   -> emit(shield, 1);
+        case ShieldOff x  -> emit(shield, 0);
+        case Loop l       -> {
+          int start= size;
+          block(l.b());
+          emit(jump, start);
+        }
+        case Block b      -> block(b);
+        case If i         -> {
+          int otherwise= branchIfFalse(i.cond());
+          block(i.then());
+          if (i.otherwise() == null){ patch(otherwise); return; }
+          int end= jumpForward(jump);
+          patch(otherwise);
+          block(i.otherwise());
+          patch(end);
+        }
+        case While w      -> {
+          int start= size;
+          int end= branchIfFalse(w.cond());
+          block(w.body());
+          emit(jump, start);
+          patch(end);
+        }
+        case Ass a        -> { exp(a.value()); emit(store, slot(a.slot(), a.varName())); }
+        default -> throw new IllegalArgumentException("Can not compile "+s);
+      }
+    }
+    private void block(Block b){ for (Stm s: b.ss()){ stm(s); } }
+    private void repeated(Exp times, int once, int again){
+      if (times == null){ emit(once); return; }
+      exp(times);
+      emit(repeat);
+      emit(again);
+    }
+    // Evaluates the condition and jumps if false; returns where the target goes
+    private int branchIfFalse(Cond c){
+      switch (c){
+        case Lt l -> { exp(l.left()); exp(l.right()); return jumpForward(ifNotLt); }
+        case Gt g -> { exp(g.left()); exp(g.right()); return jumpForward(ifNotGt); }
+        case Eq q -> { exp(q.left()); exp(q.right()); return jumpForward(ifNotEq); }
+        case FastCond f -> { return branchIfFalse(f.source()); }
+        default   -> { cond(c); return jumpForward(jumpIfFalse); }
+      }
+    }
+    private void exp(Exp e){
+      switch (e){
+        case Num n        -> emit(push, n.inner());
+        case Var v        -> emit(load, slot(v.slot(), v.name()));
+        case Add a        -> { exp(a.left()); exp(a.right()); emit(add); }
+        case Sub s        -> { exp(s.left()); exp(s.right()); emit(sub); }
+        case Mul m        -> { exp(m.left()); exp(m.right()); emit(mul); }
+        case Div d        -> { exp(d.left()); exp(d.right()); emit(div); }
+        case FuelLeft x   -> emit(fuelLeft);
+        case OppLR x      -> emit(oppLR);
+        case OppFB x      -> emit(oppFB);
+        case NumBarrels x -> emit(numBarrels);
+        case BarrelLR b   -> { index(b.index()); emit(barrelLR); }
+        case BarrelFB b   -> { index(b.index()); emit(barrelFB); }
+        case WallDist x   -> emit(wallDist);
+        case FastExp f    -> exp(f.source());
+        default -> throw new IllegalArgumentException("Can not compile "+e);
+      }
+    }
+    private void index(Exp index){
+      if (index == null){ emit(push, 0); } else { exp(index); }
+    }
+    private void cond(Cond c){
+      switch (c){
+        case Lt l  -> { exp(l.left()); exp(l.right()); emit(lt); }
+        case Gt g  -> { exp(g.left()); exp(g.right()); emit(gt); }
+        case Eq q  -> { exp(q.left()); exp(q.right()); emit(eq); }
+        case And a -> { cond(a.left()); cond(a.right()); emit(and); }
+        case Or o  -> { cond(o.left()); cond(o.right()); emit(or); }
+        case Not n -> { cond(n.cond()); emit(not); }
+        case Bool b -> emit(push, b.value() ? 1 : 0);
+        case FastCond f -> cond(f.source());
+        default -> throw new IllegalArgumentException("Can not compile "+c);
+      }
+    }
+  }
+}
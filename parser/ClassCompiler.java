@@ -0,0 +1,285 @@
+package parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+//Notes to self
+// ClassCompiler writes the class file of a subclass of CompiledProgram from the
+// Bytecode of a program. Each Bytecode instruction becomes a few JVM instructions:
+// the operand stack of the Machine is the JVM operand stack, jumps are JVM branches,
+// and each action returns the Bytecode offset where the next turn resumes.
+// The generated method is
+//   int run(OuterWorld w, int state){
+//     switch(state){ resume points... }
+//     ...code...
+//   }
+// A backward jump first calls exhausted(w): if the Budget of the turn is exhausted,
+// the turn ends and the next one resumes at the jump target.
+// The class file version is 49, so that no StackMapTable is needed:
+// the verifier infers the types. At every branch target and resume point the
+// operand stack is empty, as statements never leave values on it.
+final class ClassCompiler {
+  private static final String self= "parser/GeneratedProgram";
+  private static final String base= "parser/CompiledProgram";
+  private static final String world= "robotGame/OuterWorld";
+  private static final String worldDesc= "L" + world + ";";
+
+  // JVM opcodes
+  private static final int iconst_0= 0x03, bipush= 0x10, sipush= 0x11, ldc_w= 0x13,
+    iload_2= 0x1c, aload_0= 0x2a, aload_1= 0x2b, dup= 0x59, dup_x1= 0x5a, swap= 0x5f,
+    iadd= 0x60, isub= 0x64, imul= 0x68, idiv= 0x6c, iand= 0x7e, ior= 0x80, ixor= 0x82,
+    ifgt= 0x9d, ifeq= 0x99, if_icmpne= 0xa0, if_icmpge= 0xa2, if_icmple= 0xa4,
+    jgoto= 0xa7, lookupswitch= 0xab, ireturn= 0xac, jreturn= 0xb1,
+    getfield= 0xb4, putfield= 0xb5, invokevirtual= 0xb6, invokespecial= 0xb7, invokestatic= 0xb8, invokeinterface= 0xb9;
+
+  private final Bytecode b;
+  private final Pool pool= new Pool();
+  private byte[] out= new byte[256];
+  private int size= 0;
+
+  ClassCompiler(Bytecode b){ this.b= b; }
+
+  // The constant pool; entries are shared by key
+  private static final class Pool{
+    final Map<String,Integer> index= new HashMap<>();
+    final List<byte[]> entries= new ArrayList<>();
+    int count= 1;
+    int add(String key, byte[] entry){
+      return index.computeIfAbsent(key, k->{ entries.add(entry); return count++; });
+    }
+    int utf8(String s){
+      byte[] bs= s.getBytes(StandardCharsets.UTF_8);
+      byte[] e= new byte[3 + bs.length];
+      e[0]= 1; e[1]= (byte) (bs.length >> 8); e[2]= (byte) bs.length;
+      System.arraycopy(bs, 0, e, 3, bs.length);
+      return add("U" + s, e);
+    }
+    int ref(int tag, String key, int a){ return add(key, new byte[]{(byte) tag, (byte) (a >> 8), (byte) a}); }
+    int ref(int tag, String key, int a, int c){
+      return add(key, new byte[]{(byte) tag, (byte) (a >> 8), (byte) a, (byte) (c >> 8), (byte) c});
+    }
+    int type(String name){ return ref(7, "C" + name, utf8(name)); }
+    int string(String s){ return ref(8, "S" + s, utf8(s)); }
+    int integer(int v){ return add("I" + v, new byte[]{3, (byte) (v >> 24), (byte) (v >> 16), (byte) (v >> 8), (byte) v}); }
+    int nameAndType(String name, String desc){ return ref(12, "N" + name + desc, utf8(name), utf8(desc)); }
+    int field(String owner, String name, String desc){
+      return ref(9, "F" + owner + name + desc, type(owner), nameAndType(name, desc));
+    }
+    int method(String owner, String name, String desc){
+      return ref(10, "M" + owner + name + desc, type(owner), nameAndType(name, desc));
+    }
+    int interfaceMethod(String owner, String name, String desc){
+      return ref(11, "IM" + owner + name + desc, type(owner), nameAndType(name, desc));
+    }
+  }
+
+  private void u1(int v){
+    if (size == out.length){ out= Arrays.copyOf(out, size * 2); }
+    out[size++]= (byte) v;
+  }
+  private void u2(int v){ u1(v >> 8); u1(v); }
+  private void u4(int v){ u2(v >>> 16); u2(v); }
+  private void patch2(int at, int v){ out[at]= (byte) (v >> 8); out[at + 1]= (byte) v; }
+  private void patch4(int at, int v){ patch2(at, v >>> 16); patch2(at + 2, v); }
+
+  private void pushInt(int v){
+    if (v >= -1 && v <= 5){ u1(iconst_0 + v); }
+    else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE){ u1(bipush); u1(v); }
+    else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE){ u1(sipush); u2(v); }
+    else { u1(ldc_w); u2(pool.integer(v)); }
+  }
+  private void callWorld(String name, String desc, int args){
+    u1(invokeinterface); u2(pool.interfaceMethod(world, name, desc)); u1(args + 1); u1(0);
+  }
+  private void callBase(String name, String desc){
+    u1(invokestatic); u2(pool.method(base, name, desc));
+  }
+  private void action(String name, int next){
+    u1(aload_1);
+    callWorld(name, "()V", 0);
+    pushInt(next);
+    u1(ireturn);
+  }
+  // A branch whose 16 bit offset is patched later; returns the address of the opcode
+  private int branch(int op){
+    int at= size;
+    u1(op);
+    u2(0);
+    return at;
+  }
+  private void patchBranch(int at, int target){
+    int offset= target - at;
+    if (offset != (short) offset){ throw new IllegalArgumentException("Program too large to compile"); }
+    patch2(at + 1, offset);
+  }
+
+  // The bytes of the class file
+  byte[] bytes(){
+    int[] code= b.code;
+    int[] jvm= new int[code.length + 1];  // JVM address of each Bytecode offset
+    var resume= new TreeSet<Integer>();   // Bytecode offsets where a turn can start
+    var jumps= new ArrayList<int[]>();    // {JVM address of branch, Bytecode target}
+    resume.add(0);
+    for (int pc= 0; pc < code.length; pc++){
+      int op= code[pc];
+      int next= Bytecode.hasOperand(op) ? pc + 2 : pc + 1;
+      switch (op){
+        case Bytecode.move, Bytecode.turnL, Bytecode.turnR, Bytecode.turnAround,
+          Bytecode.takeFuel, Bytecode.wait -> resume.add(next);
+        case Bytecode.moveRepeat, Bytecode.waitRepeat -> { resume.add(pc); resume.add(next); }
+        case Bytecode.halt -> resume.add(pc);
+        case Bytecode.jump -> { if (code[pc + 1] < pc){ resume.add(code[pc + 1]); } }
+        default -> {}
+      }
+      pc= next - 1;
+    }
+    // run(OuterWorld,int): lookupswitch on the state
+    u1(iload_2);
+    int switchAt= size;
+    u1(lookupswitch);
+    while (size % 4 != 0){ u1(0); }
+    int defaultAt= size;
+    u4(0);
+    u4(resume.size());
+    var cases= new int[resume.size()];
+    int k= 0;
+    for (int r: resume){ u4(r); cases[k++]= size; u4(0); }
+    for (int pc= 0; pc < code.length; pc++){
+      jvm[pc]= size;
+      int op= code[pc];
+      int arg= Bytecode.hasOperand(op) ? code[pc + 1] : 0;
+      int next= Bytecode.hasOperand(op) ? pc + 2 : pc + 1;
+      switch (op){
+        case Bytecode.halt       -> { pushInt(pc); u1(ireturn); }
+        case Bytecode.push       -> pushInt(arg);
+        case Bytecode.load       -> {
+          u1(aload_1); pushInt(arg); u1(ldc_w); u2(pool.string(b.names[arg]));
+          callBase("read", "(" + worldDesc + "ILjava/lang/String;)I");
+        }
+        case Bytecode.store      -> {
+          u1(aload_1); pushInt(arg); u1(ldc_w); u2(pool.string(b.names[arg]));
+          callBase("write", "(I" + worldDesc + "ILjava/lang/String;)V");
+        }
+        case Bytecode.add        -> u1(iadd);
+        case Bytecode.sub        -> u1(isub);
+        case Bytecode.mul        -> u1(imul);
+        case Bytecode.div        -> u1(idiv);
+        case Bytecode.fuelLeft   -> { u1(aload_1); callWorld("readFuelLeft", "()I", 0); }
+        case Bytecode.oppLR      -> { u1(aload_1); callWorld("readOppLR", "()I", 0); }
+        case Bytecode.oppFB      -> { u1(aload_1); callWorld("readOppFB", "()I", 0); }
+        case Bytecode.numBarrels -> { u1(aload_1); callWorld("readNumBarrels", "()I", 0); }
+        case Bytecode.wallDist   -> { u1(aload_1); callWorld("readWallDist", "()I", 0); }
+        case Bytecode.barrelLR   -> { u1(aload_1); callBase("barrelLR", "(I" + worldDesc + ")I"); }
+        case Bytecode.barrelFB   -> { u1(aload_1); callBase("barrelFB", "(I" + worldDesc + ")I"); }
+        case Bytecode.lt         -> compare(if_icmpge);
+        case Bytecode.gt         -> compare(if_icmple);
+        case Bytecode.eq         -> compare(if_icmpne);
+        case Bytecode.and        -> u1(iand);
+        case Bytecode.or         -> u1(ior);
+        case Bytecode.not        -> { pushInt(1); u1(ixor); }
+        case Bytecode.jump        -> {
+          if (arg < pc){//if (exhausted(w)) return arg;
+            u1(aload_0); u1(aload_1);
+            u1(invokevirtual); u2(pool.method(base, "exhausted", "(" + worldDesc + ")Z"));
+            jumps.add(new int[]{branch(ifeq), arg});
+            pushInt(arg); u1(ireturn);
+          }
+          else { jumps.add(new int[]{branch(jgoto), arg}); }
+        }
+        case Bytecode.jumpIfFalse -> jumps.add(new int[]{branch(ifeq), arg});
+        case Bytecode.ifNotLt     -> jumps.add(new int[]{branch(if_icmpge), arg});
+        case Bytecode.ifNotGt     -> jumps.add(new int[]{branch(if_icmple), arg});
+        case Bytecode.ifNotEq     -> jumps.add(new int[]{branch(if_icmpne), arg});
+        case Bytecode.move       -> action("doMove", next);
+        case Bytecode.turnL      -> action("doTurnL", next);
+        case Bytecode.turnR      -> action("doTurnR", next);
+        case Bytecode.turnAround -> action("doTurnAround", next);
+        case Bytecode.takeFuel   -> action("doTakeFuel", next);
+        case Bytecode.wait       -> action("doWait", next);
+        case Bytecode.repeat     -> {//count= Math.max(1, n)
+          pushInt(1);
+          u1(invokestatic); u2(pool.method("java/lang/Math", "max", "(II)I"));
+          u1(aload_0); u1(swap);
+          u1(putfield); u2(pool.field(base, "count", "I"));
+        }
+        case Bytecode.moveRepeat, Bytecode.waitRepeat -> {//act; return --count > 0 ? pc : next
+          u1(aload_1);
+          callWorld(op == Bytecode.moveRepeat ? "doMove" : "doWait", "()V", 0);
+          u1(aload_0); u1(dup);
+          u1(getfield); u2(pool.field(base, "count", "I"));
+          pushInt(1); u1(isub); u1(dup_x1);
+          u1(putfield); u2(pool.field(base, "count", "I"));
+          int again= branch(ifgt);
+          pushInt(next); u1(ireturn);
+          patchBranch(again, size);
+          pushInt(pc); u1(ireturn);
+        }
+        case Bytecode.shield     -> { u1(aload_1); pushInt(arg); callWorld("setShield", "(Z)V", 1); }
+        default -> throw new IllegalArgumentException("Invalid opcode "+op+" at "+pc);
+      }
+      pc= next - 1;
+    }
+    for (int[] j: jumps){ patchBranch(j[0], jvm[j[1]]); }
+    patch4(defaultAt, jvm[code.length - 1] - switchAt);//unknown states go to the final halt
+    k= 0;
+    for (int r: resume){ patch4(cases[k++], jvm[r] - switchAt); }
+    if (size > 65535){ throw new IllegalArgumentException("Program too large to compile"); }
+    byte[] run= Arrays.copyOf(out, size);
+
+    // <init>(Budget budget): super(halt, budget)
+    size= 0;
+    u1(aload_0);
+    pushInt(code.length - 1);
+    u1(aload_1);
+    u1(invokespecial); u2(pool.method(base, "<init>", "(ILparser/Budget;)V"));
+    u1(jreturn);
+    byte[] init= Arrays.copyOf(out, size);
+
+    int thisClass= pool.type(self);
+    int superClass= pool.type(base);
+    int codeName= pool.utf8("Code");
+    int initName= pool.utf8("<init>"), initDesc= pool.utf8("(Lparser/Budget;)V");
+    int runName= pool.utf8("run"), runDesc= pool.utf8("(" + worldDesc + "I)I");
+
+    size= 0;
+    out= new byte[run.length + init.length + 1024];
+    u4(0xCAFEBABE);
+    u2(0); u2(49);
+    u2(pool.count);
+    for (byte[] e: pool.entries){ for (byte x: e){ u1(x); } }
+    u2(0x0010 | 0x0020);//final super
+    u2(thisClass);
+    u2(superClass);
+    u2(0);//interfaces
+    u2(0);//fields
+    u2(2);//methods
+    method(0x0001, initName, initDesc, codeName, 3, 2, init);
+    method(0, runName, runDesc, codeName, b.maxStack + 4, 3, run);
+    u2(0);//attributes
+    return Arrays.copyOf(out, size);
+  }
+
+  // Pushes 1 if the comparison holds, else 0; jumpIfNot is the opposite comparison
+  private void compare(int jumpIfNot){
+    u1(jumpIfNot); u2(7);
+    pushInt(1);
+    u1(jgoto); u2(4);
+    pushInt(0);
+  }
+
+  private void method(int access, int name, int desc, int codeName, int maxStack, int maxLocals, byte[] code){
+    u2(access); u2(name); u2(desc);
+    u2(1);//attributes: Code
+    u2(codeName);
+    u4(12 + code.length);
+    u2(maxStack); u2(maxLocals);
+    u4(code.length);
+    for (byte x: code){ u1(x); }
+    u2(0);//exception table
+    u2(0);//attributes
+  }
+}
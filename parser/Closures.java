@@ -0,0 +1,193 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import robotGame.OuterWorld;
+//Notes to self
+// Closures compiles Exp and Cond trees into trees of lambdas, specialized by shape.
+// Evaluating the records calls Exp.evaluate/Cond.evaluate on many record types
+// from the same call sites (megamorphic). Here the common shapes become a single
+// lambda with no inner call at all:
+//   constants, variables and sensors,
+//   x op constant for arithmetic,
+//   variable vs constant, sensor vs constant and variable vs variable comparisons.
+// Other nodes become a generic lambda over their compiled children.
+// The lambdas make the same OuterWorld calls as the records, in the same order
+// (and/or still evaluate both sides, division by zero still throws).
+//
+// specialize(Program) wraps each compiled tree in FastExp/FastCond, which keep the
+// source node for toString, BinaryFormat and Bytecode: the program prints the same.
+final class Closures {
+  private Closures(){}
+
+  // Sensors without argument, read through a switch instead of a virtual call
+  private static final int fuelLeft= 0, oppLR= 1, oppFB= 2, numBarrels= 3,
+    wallDist= 4, barrelLR0= 5, barrelFB0= 6;
+  private static int sensor(Exp e){
+    return switch (e){
+      case FuelLeft x   -> fuelLeft;
+      case OppLR x      -> oppLR;
+      case OppFB x      -> oppFB;
+      case NumBarrels x -> numBarrels;
+      case WallDist x   -> wallDist;
+      case BarrelLR b when b.index() == null -> barrelLR0;
+      case BarrelFB b when b.index() == null -> barrelFB0;
+      default -> -1;
+    };
+  }
+  static int read(OuterWorld w, int sensor){
+    return switch (sensor){
+      case fuelLeft   -> w.readFuelLeft();
+      case oppLR      -> w.readOppLR();
+      case oppFB      -> w.readOppFB();
+      case numBarrels -> w.readNumBarrels();
+      case wallDist   -> w.readWallDist();
+      case barrelLR0  -> w.readBarrelLR(0);
+      default         -> w.readBarrelFB(0);
+    };
+  }
+
+  // The compiled form of an expression
+  static Exp exp(Exp e){
+    switch (e){
+      case FastExp f -> { return f.fast(); }
+      case Num n -> { int k= n.inner(); return w->k; }
+      case Var v -> { int slot= v.slot(); String name= v.name(); return w->w.readSlot(slot, name); }
+      case FuelLeft x   -> { return OuterWorld::readFuelLeft; }
+      case OppLR x      -> { return OuterWorld::readOppLR; }
+      case OppFB x      -> { return OuterWorld::readOppFB; }
+      case NumBarrels x -> { return OuterWorld::readNumBarrels; }
+      case WallDist x   -> { return OuterWorld::readWallDist; }
+      case BarrelLR b -> {
+        if (b.index() == null){ return w->w.readBarrelLR(0); }
+        if (b.index() instanceof Num n){ int k= Math.max(0, n.inner()); return w->w.readBarrelLR(k); }
+        Exp i= exp(b.index());
+        return w->w.readBarrelLR(Math.max(0, i.evaluate(w)));
+      }
+      case BarrelFB b -> {
+        if (b.index() == null){ return w->w.readBarrelFB(0); }
+        if (b.index() instanceof Num n){ int k= Math.max(0, n.inner()); return w->w.readBarrelFB(k); }
+        Exp i= exp(b.index());
+        return w->w.readBarrelFB(Math.max(0, i.evaluate(w)));
+      }
+      case Add a -> {
+        Exp l= exp(a.left());
+        if (a.right() instanceof Num n){ int k= n.inner(); return w->l.evaluate(w) + k; }
+        Exp r= exp(a.right());
+        return w->l.evaluate(w) + r.evaluate(w);
+      }
+      case Sub s -> {
+        Exp l= exp(s.left());
+        if (s.right() instanceof Num n){ int k= n.inner(); return w->l.evaluate(w) - k; }
+        Exp r= exp(s.right());
+        return w->l.evaluate(w) - r.evaluate(w);
+      }
+      case Mul m -> {
+        Exp l= exp(m.left());
+        if (m.right() instanceof Num n){ int k= n.inner(); return w->l.evaluate(w) * k; }
+        Exp r= exp(m.right());
+        return w->l.evaluate(w) * r.evaluate(w);
+      }
+      case Div d -> {
+        Exp l= exp(d.left());
+        if (d.right() instanceof Num n){ int k= n.inner(); return w->l.evaluate(w) / k; }
+        Exp r= exp(d.right());
+        return w->l.evaluate(w) / r.evaluate(w);
+      }
+      default -> { return e; }
+    }
+  }
+
+  // The compiled form of a condition
+  static Cond cond(Cond c){
+    switch (c){
+      case FastCond f -> { return f.fast(); }
+      case Lt l -> {
+        Exp a= l.left(), b= l.right();
+        if (a instanceof Var v && b instanceof Num n){ int i= v.slot(), k= n.inner(); String name= v.name(); return w->w.readSlot(i, name) < k; }
+        if (b instanceof Num n && sensor(a) >= 0){ int s= sensor(a), k= n.inner(); return w->read(w, s) < k; }
+        if (a instanceof Var v && b instanceof Var u){ int i= v.slot(), j= u.slot(); String x= v.name(), y= u.name(); return w->w.readSlot(i, x) < w.readSlot(j, y); }
+        Exp x= exp(a);
+        if (b instanceof Num n){ int k= n.inner(); return w->x.evaluate(w) < k; }
+        Exp y= exp(b);
+        return w->x.evaluate(w) < y.evaluate(w);
+      }
+      case Gt g -> {
+        Exp a= g.left(), b= g.right();
+        if (a instanceof Var v && b instanceof Num n){ int i= v.slot(), k= n.inner(); String name= v.name(); return w->w.readSlot(i, name) > k; }
+        if (b instanceof Num n && sensor(a) >= 0){ int s= sensor(a), k= n.inner(); return w->read(w, s) > k; }
+        if (a instanceof Var v && b instanceof Var u){ int i= v.slot(), j= u.slot(); String x= v.name(), y= u.name(); return w->w.readSlot(i, x) > w.readSlot(j, y); }
+        Exp x= exp(a);
+        if (b instanceof Num n){ int k= n.inner(); return w->x.evaluate(w) > k; }
+        Exp y= exp(b);
+        return w->x.evaluate(w) > y.evaluate(w);
+      }
+      case Eq q -> {
+        Exp a= q.left(), b= q.right();
+        if (a instanceof Var v && b instanceof Num n){ int i= v.slot(), k= n.inner(); String name= v.name(); return w->w.readSlot(i, name) == k; }
+        if (b instanceof Num n && sensor(a) >= 0){ int s= sensor(a), k= n.inner(); return w->read(w, s) == k; }
+        if (a instanceof Var v && b instanceof Var u){ int i= v.slot(), j= u.slot(); String x= v.name(), y= u.name(); return w->w.readSlot(i, x) == w.readSlot(j, y); }
+        Exp x= exp(a);
+        if (b instanceof Num n){ int k= n.inner(); return w->x.evaluate(w) == k; }
+        Exp y= exp(b);
+        return w->x.evaluate(w) == y.evaluate(w);
+      }
+      case And a -> {
+        Cond l= cond(a.left()), r= cond(a.right());
+        return w->l.evaluate(w) & r.evaluate(w);//both sides are evaluated, as And does
+      }
+      case Or o -> {
+        Cond l= cond(o.left()), r= cond(o.right());
+        return w->l.evaluate(w) | r.evaluate(w);
+      }
+      case Not n -> {
+        Cond inner= cond(n.cond());
+        return w->!inner.evaluate(w);
+      }
+      default -> { return c; }
+    }
+  }
+
+  // The same program, with every expression and condition compiled
+  static Program specialize(Program p){
+    return new Program(stms(p.ss()), p.spans());
+  }
+  private static List<Stm> stms(List<Stm> ss){
+    var res= new ArrayList<Stm>(ss.size());
+    for (Stm s: ss){ res.add(stm(s)); }
+    return Collections.unmodifiableList(res);
+  }
+  private static Block block(Block b){ return b == null ? null : new Block(stms(b.ss())); }
+  private static Exp fastExp(Exp e){
+    return e == null || e instanceof FastExp ? e : new FastExp(e, exp(e));
+  }
+  private static Cond fastCond(Cond c){
+    return c instanceof FastCond ? c : new FastCond(c, cond(c));
+  }
+  private static Stm stm(Stm s){
+    return switch (s){
+      case Loop l  -> new Loop(block(l.b()));
+      case Block b -> block(b);
+      case If i    -> new If(fastCond(i.cond()), block(i.then()), block(i.otherwise()));
+      case While w -> new While(fastCond(w.cond()), block(w.body()));
+      case Move m  -> new Move(fastExp(m.steps()));
+      case Wait w  -> new Wait(fastExp(w.time()));
+      case Ass a   -> new Ass(a.varName(), a.slot(), fastExp(a.value()));
+      default      -> s;
+    };
+  }
+}
+
+// A compiled expression, printed as its source
+record FastExp(Exp source, Exp fast) implements Exp{
+  public int evaluate(OuterWorld w){ return fast.evaluate(w); }
+  @Override public String toString(){ return source.toString(); }
+}
+
+// A compiled condition, printed as its source
+record FastCond(Cond source, Cond fast) implements Cond{
+  public boolean evaluate(OuterWorld w){ return fast.evaluate(w); }
+  @Override public String toString(){ return source.toString(); }
+}
@@ -0,0 +1,84 @@
+package parser;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import robotGame.OuterWorld;
+
+/**A Program translated to a JVM class, defined as a hidden class (see ClassCompiler).
+ * Control flow is made of real JVM branches, and each turn resumes at the saved state
+ * through a switch, so the JIT can inline the OuterWorld calls and the arithmetic.
+ * A CompiledProgram is a Mind: it makes exactly the OuterWorld calls of Program.execute.
+ * With a Budget, each backward branch (a loop iteration) is a step, as in Machine:
+ * once the budget of the turn runs out the program waits, and resumes at the loop start.
+ */
+public abstract class CompiledProgram implements Mind{
+  // Read and written by the generated code
+  int count= 0;          // turns left for the move(e)/wait(e) being repeated
+  private int state= 0;  // where the next turn resumes, an offset in the Bytecode
+  private final int halt;// the state of a program that is done
+  private final Budget budget;// null if unlimited
+  private int left;      // loop iterations left in this turn
+
+  CompiledProgram(int halt, Budget budget){
+    this.halt= halt;
+    this.budget= budget;
+  }
+
+  // Runs the generated code from the given state until an action or the end;
+  // returns the state for the next turn
+  abstract int run(OuterWorld w, int state);
+
+  /**Translates the program to a hidden class, once.
+   * Each call to the supplier returns a new CompiledProgram at the start of the program.
+   * Throws IllegalArgumentException if the program is too large for a JVM method.*/
+  public static Supplier<CompiledProgram> compile(Program p){
+    var metered= metered(p);
+    return ()->metered.apply(null);
+  }
+
+  /**As compile, but each CompiledProgram runs at most budget.perTurn()
+   * loop iterations per turn; a null budget is unlimited.*/
+  public static Function<Budget,CompiledProgram> metered(Program p){
+    byte[] bytes= new ClassCompiler(Bytecode.compile(p)).bytes();
+    MethodHandle constructor;
+    try {
+      var hidden= MethodHandles.lookup().defineHiddenClass(bytes, true);
+      constructor= hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class, Budget.class));
+    }
+    catch (IllegalAccessException | NoSuchMethodException e){ throw new IllegalStateException(e); }
+    return budget->{
+      try { return (CompiledProgram) constructor.invoke(budget); }
+      catch (Throwable t){ throw new IllegalStateException(t); }
+    };
+  }
+
+  /**Runs until an action is performed or the program is done. Returns this*/
+  @Override public final CompiledProgram execute(OuterWorld w){
+    if (w.used()){ return this; }
+    if (budget != null){ left= budget.perTurn(); }
+    state= run(w, state);
+    return this;
+  }
+
+  /**True once every statement of the program has been executed*/
+  public final boolean done(){ return state == halt; }
+
+  // Helpers called by the generated code, with the same semantic as Var, Ass and BarrelLR/FB
+  static int read(OuterWorld w, int slot, String name){ return w.readSlot(slot, name); }
+  static void write(int value, OuterWorld w, int slot, String name){ w.setSlot(slot, name, value); }
+  static int barrelLR(int index, OuterWorld w){ return w.readBarrelLR(Math.max(0, index)); }
+  static int barrelFB(int index, OuterWorld w){ return w.readBarrelFB(Math.max(0, index)); }
+
+  // Called by the generated code on every backward branch: true if the budget of
+  // the turn is exhausted, and the robot waits instead of looping again
+  final boolean exhausted(OuterWorld w){
+    if (budget == null){ return false; }
+    if (left-- == 0){ budget.exhaust(); w.doWait(); return true; }
+    budget.step();
+    return false;
+  }
+}
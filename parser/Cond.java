@@ -65,4 +65,10 @@ record Not(Cond cond) implements Cond {
     @Override public String toString() {
         return "Not[" + cond + "]";
     }
-}
\ No newline at end of file
+}
+
+// Constant condition: only produced by the Optimizer, when a condition is statically decided
+record Bool(boolean value) implements Cond {
+    public boolean evaluate(OuterWorld w) { return value; }
+    @Override public String toString() { return value ? "True" : "False"; }
+}
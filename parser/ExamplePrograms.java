@@ -6,10 +6,10 @@ public class ExamplePrograms {
   static Block b(Stm...ss){
     return new Block(List.of(ss));
     }
-  static final Var x= new Var("x");
-  static final Var y= new Var("x");
-  static final Var lr= new Var("lr");
-  static final Var fb= new Var("fb");
+  static final Var x= new Var("x", 0);
+  static final Var y= new Var("x", 0);
+  static final Var lr= new Var("lr", 0);
+  static final Var fb= new Var("fb", 1);
   static final Num zero= new Num(0);
   static final Num one= new Num(1);
   static final Num minusOne= new Num(-1);
@@ -56,8 +56,8 @@ public class ExamplePrograms {
       }
   static public Program aimAndGoLocVar(){
     return new Program(List.of(new Loop(b(
-      new Ass("lr",new BarrelLR(null)),
-      new Ass("fb",new BarrelFB(null)),
+      new Ass("lr",0,new BarrelLR(null)),
+      new Ass("fb",1,new BarrelFB(null)),
       new If(new And(new Eq(lr,zero),new Eq(fb,zero)),
         b(new TakeFuel()),b(
       new If(new And(new Eq(lr,zero),new Gt(fb,zero)),
@@ -70,14 +70,14 @@ public class ExamplePrograms {
       }
   static public Program defaultProgramCode(){
     var z= new Num(0);
-    var x= new Var("x");
-    var y= new Var("y");
+    var x= new Var("x", 0);
+    var y= new Var("y", 1);
     return new Program(List.of(new While(new Gt(new FuelLeft(),z),b(
       new If(new Eq(new NumBarrels(),z),
         b(new TakeFuel()/*,new ShieldOn()*/),//comment and uncomment this to check stealing fuel behavior.
         b(
-          new Ass("x", new BarrelLR(null)),
-          new Ass("y", new BarrelFB(null)),
+          new Ass("x", 0, new BarrelLR(null)),
+          new Ass("y", 1, new BarrelFB(null)),
           new If(new And(new Eq(x,z),new Eq(y,z)),b(new TakeFuel()),
             b(new If(new Eq(y,z),b(
               new If(new Gt(x,z),b(new TurnL()),b(new TurnR()))
@@ -21,12 +21,11 @@ record Num(int inner) implements Exp{ //full provided code for one example expre
   @Override public String toString(){ return "Num["+inner+"]"; }
 }
 
-// Variable reference that retrieves a stored value by name.
+// Variable reference that retrieves a stored value by its slot (see Symbols).
 // If the variable is not defined, it returns 0 as a default value.
-record Var(String name) implements Exp {
+record Var(String name, int slot) implements Exp {
   public int evaluate(OuterWorld w) {
-    Integer value = w.readVar(name);
-    return value != null ? value : 0; // Default to 0 if variable not defined
+    return w.readSlot(slot, name); // 0 if variable not defined
   }
   @Override public String toString() { return "Var[$" + name + "]"; }
 }
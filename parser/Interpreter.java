@@ -0,0 +1,115 @@
+package parser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import robotGame.OuterWorld;
+//Notes to self
+// Interpreter runs a Program with the same per turn behaviour as Program.execute,
+// but without rewriting the AST: the statements are only read, and the execution
+// state is a stack of (statement list, index) frames, like a program counter.
+//
+// - Block and If advance the index of their frame, then push the chosen block.
+// - Loop and While leave the index on themselves and push their body:
+//   when the body frame is done and popped, they are executed again.
+// - Move(n) and Wait(n) keep the remaining number of turns in 'repeat' and leave
+//   the index on themselves, instead of becoming a new Move(Num(n-1)).
+//
+// A Block or If that is the last statement of its frame replaces that frame,
+// so a program like loop{ if(..){..} } does not grow the stack.
+// Frames are reused, so after the stack has reached the nesting depth of the
+// program no object is allocated per interpreted statement.
+// The OuterWorld calls are exactly those of Program.execute, in the same order.
+public final class Interpreter implements Mind{
+  private static final class Frame{
+    List<Stm> ss;
+    int index;
+  }
+  private Frame[] frames= new Frame[8];
+  private int size= 0;
+  private int repeat= 0; // turns left for the Move/Wait at the top, 0 if none started
+  private final Budget budget; // null if unlimited
+
+  // An interpreter at the start of the given program
+  public Interpreter(Program p){ this(p, null); }
+
+  // An interpreter at the start of the given program, executing at most
+  // budget.perTurn() statements per turn (see Program.execute(OuterWorld,Budget)).
+  // Its steps are counted as those of the interpreter: a Block is one, as its statements
+  public Interpreter(Program p, Budget budget){
+    this.budget= budget;
+    if (!p.ss().isEmpty()){ push(p.ss()); }
+  }
+
+  // True once every statement of the program has been executed
+  public boolean done(){ return size == 0; }
+
+  private void push(List<Stm> ss){
+    if (size == frames.length){ frames= Arrays.copyOf(frames, size * 2); }
+    if (frames[size] == null){ frames[size]= new Frame(); }
+    Frame f= frames[size++];
+    f.ss= ss;
+    f.index= 0;
+  }
+
+  // Move past the statement at the top, popping its frame if it was the last one.
+  // A Loop or While under a popped frame is then executed again
+  private void advance(){
+    Frame f= frames[size - 1];
+    f.index++;
+    if (f.index == f.ss.size()){ f.ss= null; size--; }
+  }
+
+  // Move(n) and Wait(n) evaluate n on the first turn, then repeat the action on
+  // the next n-1 turns without evaluating it again. Returns true if there are turns left
+  private boolean again(Exp times, OuterWorld w){
+    if (repeat == 0){ repeat= times == null ? 1 : Math.max(1, times.evaluate(w)); }
+    return --repeat > 0;
+  }
+
+  // Executes statements until an action is performed or the program is done.
+  // Returns this interpreter, so it can be used like Program.execute
+  public Interpreter execute(OuterWorld w){
+    if (budget == null){
+      while (!w.used() && size > 0){ step(w); }
+      return this;
+    }
+    int left= budget.perTurn();
+    while (!w.used() && size > 0){
+      if (left-- == 0){ budget.exhaust(); w.doWait(); break; }
+      budget.step();
+      step(w);
+    }
+    return this;
+  }
+
+  // Executes the statement at the top, like one iteration of Program.execute
+  private void step(OuterWorld w){
+    Frame f= frames[size - 1];
+    Stm s= f.ss.get(f.index);
+    switch (s){
+      case Block b -> { advance(); push(b.ss()); }
+      case Loop l  -> push(l.b().ss());
+      case While wh -> {
+        if (wh.cond().evaluate(w)){ push(wh.body().ss()); }
+        else { advance(); }
+      }
+      case If i -> {
+        advance();
+        Block next= i.cond().evaluate(w) ? i.then() : i.otherwise();
+        if (next != null){ push(next.ss()); }
+      }
+      case Move m -> {
+        boolean again= again(m.steps(), w);
+        w.doMove();
+        if (!again){ advance(); }
+      }
+      case Wait t -> {
+        boolean again= again(t.time(), w);
+        w.doWait();
+        if (!again){ advance(); }
+      }
+      default -> { s.execute(w); advance(); }//the other actions and Ass
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package parser;
+
+import java.util.Arrays;
+
+// Kind is the kind of a token, decided once by the Tokenizer when the token is scanned.
+// Keywords and punctuation have a fixed spelling (literal=true); the other kinds
+// (numbers, variables, unknown words and the end of the input) only have a
+// human readable description used in error messages.
+// Public so that tools outside the package (the benchmarks) can walk the tokens
+// through Tokenizer.peek and next(Kind), without allocating their text.
+public enum Kind {
+  OpenRound("("), CloseRound(")"), OpenCurly("{"), CloseCurly("}"),
+  Comma(","), Semicolon(";"), Assign("="),
+  Move("move"), TurnL("turnL"), TurnR("turnR"), TurnAround("turnAround"),
+  TakeFuel("takeFuel"), Wait("wait"), ShieldOn("shieldOn"), ShieldOff("shieldOff"),
+  Loop("loop"), If("if"), Elif("elif"), Else("else"), While("while"),
+  Lt("lt"), Gt("gt"), Eq("eq"), And("and"), Or("or"), Not("not"),
+  Add("add"), Sub("sub"), Mul("mul"), Div("div"),
+  FuelLeft("fuelLeft"), OppLR("oppLR"), OppFB("oppFB"), NumBarrels("numBarrels"),
+  BarrelLR("barrelLR"), BarrelFB("barrelFB"), WallDist("wallDist"),
+  Number("number", false), Variable("variable name", false),
+  Word("word", false), End("END OF INPUT", false);
+
+  final String text;
+  final boolean literal;
+  Kind(String text){ this(text, true); }
+  Kind(String text, boolean literal){ this.text= text; this.literal= literal; }
+
+  // Literal kinds grouped by their first character, so that a word is compared
+  // with at most a few candidates
+  private static final Kind[][] keywords= new Kind[128][];
+  static {
+    for (Kind k: values()){
+      if (!k.literal){ continue; }
+      int c= k.text.charAt(0);
+      Kind[] old= keywords[c] == null ? new Kind[0] : keywords[c];
+      Kind[] res= Arrays.copyOf(old, old.length + 1);
+      res[old.length]= k;
+      keywords[c]= res;
+    }
+  }
+
+  // The keyword (or '=') spelled by in[start..end), or Word if there is none
+  static Kind keyword(CharSequence in, int start, int end){
+    char first= in.charAt(start);
+    if (first >= keywords.length || keywords[first] == null){ return Word; }
+    for (Kind k: keywords[first]){
+      if (k.spells(in, start, end)){ return k; }
+    }
+    return Word;
+  }
+
+  // Whether in[start..end) is exactly the text of this kind
+  boolean spells(CharSequence in, int start, int end){
+    if (end - start != text.length()){ return false; }
+    for (int i= 0; i < text.length(); i++){
+      if (in.charAt(start + i) != text.charAt(i)){ return false; }
+    }
+    return true;
+  }
+
+  // The punctuation kind of c; c is one of {}(),;
+  static Kind punct(char c){
+    return switch (c){
+      case '(' -> OpenRound;
+      case ')' -> CloseRound;
+      case '{' -> OpenCurly;
+      case '}' -> CloseCurly;
+      case ',' -> Comma;
+      default  -> Semicolon;
+    };
+  }
+}
@@ -0,0 +1,97 @@
+package parser;
+
+import robotGame.OuterWorld;
+//Notes to self
+// Machine runs Bytecode: a program counter, an operand stack and the repeat
+// counter of move(e)/wait(e), over code shared with every other Machine.
+// The dispatch loop is a single switch on the opcode, with no virtual call per node.
+// As Program.execute, each call to execute runs until one action is performed;
+// the action instruction saves the program counter and returns,
+// so the next turn resumes right after it (or on it, for moveRepeat/waitRepeat).
+// The OuterWorld calls are exactly those of Program.execute, in the same order.
+// With a Budget, every backward jump (one iteration of a loop or a while) is a step:
+// when the budget of the turn runs out, the machine waits and resumes on the jump target,
+// the start of the loop, on the next turn. Without loops the code runs in bounded time.
+public final class Machine implements Mind{
+  private final int[] code;
+  private final String[] names;
+  private final int[] stack;
+  private int pc= 0;
+  private int count= 0; // turns left for the moveRepeat/waitRepeat at pc
+  private final Budget budget; // null if unlimited
+
+  Machine(Bytecode b, Budget budget){
+    code= b.code;
+    names= b.names;
+    stack= new int[Math.max(1, b.maxStack)];
+    this.budget= budget;
+  }
+
+  // Compiles the program and starts a machine on it, with no limit on the loop iterations of a turn
+  public static Machine of(Program p){ return Bytecode.compile(p).start(); }
+
+  // Compiles the program and starts a machine on it, running at most
+  // budget.perTurn() loop iterations per turn
+  public static Machine of(Program p, Budget budget){ return Bytecode.compile(p).start(budget); }
+
+  // True once every statement of the program has been executed
+  public boolean done(){ return code[pc] == Bytecode.halt; }
+
+  // Runs until an action is performed or the program is done. Returns this
+  public Machine execute(OuterWorld w){
+    if (w.used()){ return this; }
+    final int[] code= this.code;
+    final int[] st= stack;
+    int pc= this.pc;
+    int sp= 0;
+    int left= budget == null ? 0 : budget.perTurn();
+    while (true){
+      switch (code[pc++]){
+        case Bytecode.halt        -> { this.pc= pc - 1; return this; }
+        case Bytecode.push        -> st[sp++]= code[pc++];
+        case Bytecode.load        -> { int slot= code[pc++]; st[sp++]= w.readSlot(slot, names[slot]); }
+        case Bytecode.store       -> { int slot= code[pc++]; w.setSlot(slot, names[slot], st[--sp]); }
+        case Bytecode.add         -> { sp--; st[sp - 1] += st[sp]; }
+        case Bytecode.sub         -> { sp--; st[sp - 1] -= st[sp]; }
+        case Bytecode.mul         -> { sp--; st[sp - 1] *= st[sp]; }
+        case Bytecode.div         -> { sp--; st[sp - 1] /= st[sp]; }
+        case Bytecode.fuelLeft    -> st[sp++]= w.readFuelLeft();
+        case Bytecode.oppLR       -> st[sp++]= w.readOppLR();
+        case Bytecode.oppFB       -> st[sp++]= w.readOppFB();
+        case Bytecode.numBarrels  -> st[sp++]= w.readNumBarrels();
+        case Bytecode.barrelLR    -> st[sp - 1]= w.readBarrelLR(Math.max(0, st[sp - 1]));
+        case Bytecode.barrelFB    -> st[sp - 1]= w.readBarrelFB(Math.max(0, st[sp - 1]));
+        case Bytecode.wallDist    -> st[sp++]= w.readWallDist();
+        case Bytecode.lt          -> { sp--; st[sp - 1]= st[sp - 1] < st[sp] ? 1 : 0; }
+        case Bytecode.gt          -> { sp--; st[sp - 1]= st[sp - 1] > st[sp] ? 1 : 0; }
+        case Bytecode.eq          -> { sp--; st[sp - 1]= st[sp - 1] == st[sp] ? 1 : 0; }
+        case Bytecode.and         -> { sp--; st[sp - 1] &= st[sp]; }
+        case Bytecode.or          -> { sp--; st[sp - 1] |= st[sp]; }
+        case Bytecode.not         -> st[sp - 1] ^= 1;
+        case Bytecode.jump        -> {
+          int target= code[pc];
+          if (target < pc && budget != null){//a loop iteration: the stack is empty
+            if (left-- == 0){ budget.exhaust(); w.doWait(); this.pc= target; return this; }
+            budget.step();
+          }
+          pc= target;
+        }
+        case Bytecode.jumpIfFalse -> pc= st[--sp] == 0 ? code[pc] : pc + 1;
+        case Bytecode.ifNotLt     -> { sp -= 2; pc= st[sp] < st[sp + 1] ? pc + 1 : code[pc]; }
+        case Bytecode.ifNotGt     -> { sp -= 2; pc= st[sp] > st[sp + 1] ? pc + 1 : code[pc]; }
+        case Bytecode.ifNotEq     -> { sp -= 2; pc= st[sp] == st[sp + 1] ? pc + 1 : code[pc]; }
+        case Bytecode.move        -> { w.doMove(); this.pc= pc; return this; }
+        case Bytecode.turnL       -> { w.doTurnL(); this.pc= pc; return this; }
+        case Bytecode.turnR       -> { w.doTurnR(); this.pc= pc; return this; }
+        case Bytecode.turnAround  -> { w.doTurnAround(); this.pc= pc; return this; }
+        case Bytecode.takeFuel    -> { w.doTakeFuel(); this.pc= pc; return this; }
+        case Bytecode.wait        -> { w.doWait(); this.pc= pc; return this; }
+        case Bytecode.repeat      -> count= Math.max(1, st[--sp]);
+        case Bytecode.moveRepeat  -> { w.doMove(); this.pc= --count > 0 ? pc - 1 : pc; return this; }
+        case Bytecode.waitRepeat  -> { w.doWait(); this.pc= --count > 0 ? pc - 1 : pc; return this; }
+        case Bytecode.shield      -> w.setShield(code[pc++] != 0);
+        default -> throw new IllegalStateException("Invalid opcode "+code[pc - 1]+" at "+(pc - 1));
+      }
+    }
+  }
+}
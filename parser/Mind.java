@@ -0,0 +1,13 @@
+package parser;
+
+import robotGame.OuterWorld;
+
+/**The running state of a robot program.
+ * Each call to execute runs the program until a single action is performed
+ * on the OuterWorld (or the program is done), and returns the state to use
+ * for the next turn.
+ * Program rewrites its AST; Interpreter and Machine update themselves
+ * and return this. All of them make the same OuterWorld calls.*/
+public interface Mind{
+  Mind execute(OuterWorld w);
+}
@@ -0,0 +1,204 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+//Notes to self
+// Optimizer rewrites a program into an equivalent one that does less work per turn:
+// - arithmetic and comparisons on constants are folded (div by a constant 0 is kept:
+//   it still throws when executed);
+// - x+0, 0+x, x-0, x*1, 1*x and x/1 become x;
+//   x*0, 0*x, x-x, eq(x,x), lt(x,x) and gt(x,x) are decided only if x is pure;
+// - not(not(c)) becomes c, and/or with a constant side are simplified;
+// - if/while with a decided condition are pruned, while(true) becomes loop;
+// - move(k)/wait(k) with a constant k <= 1 become move/wait,
+//   barrelLR(k)/barrelFB(k) with a constant k <= 0 become barrelLR/barrelFB.
+// An expression is pure when it only reads variables and numbers: sensor reads are
+// never removed or reordered, so the OuterWorld calls stay exactly the same.
+// An if/while whose blocks are all pruned is dropped when its condition is pure;
+// otherwise the condition still has to run, and the emptied block becomes the
+// minimal no-op if(false){wait;}, since blocks are never empty.
+final class Optimizer {
+  private Optimizer(){}
+
+  static Program optimize(Program p){ return new Program(stms(p.ss()), p.spans()); }
+
+  // Whether the expression makes no OuterWorld call other than readVar, and can not throw
+  static boolean pureExp(Exp e){
+    return switch (e){
+      case Num n -> true;
+      case Var v -> true;
+      case Add a -> pureExp(a.left()) && pureExp(a.right());
+      case Sub s -> pureExp(s.left()) && pureExp(s.right());
+      case Mul m -> pureExp(m.left()) && pureExp(m.right());
+      case Div d -> d.right() instanceof Num n && n.inner() != 0 && pureExp(d.left());
+      case FastExp f -> pureExp(f.source());
+      default -> false;
+    };
+  }
+  static boolean pureCond(Cond c){
+    return switch (c){
+      case Bool b -> true;
+      case Lt l   -> pureExp(l.left()) && pureExp(l.right());
+      case Gt g   -> pureExp(g.left()) && pureExp(g.right());
+      case Eq q   -> pureExp(q.left()) && pureExp(q.right());
+      case And a  -> pureCond(a.left()) && pureCond(a.right());
+      case Or o   -> pureCond(o.left()) && pureCond(o.right());
+      case Not n  -> pureCond(n.cond());
+      case FastCond f -> pureCond(f.source());
+      default -> false;
+    };
+  }
+  private static boolean isNum(Exp e, int k){ return e instanceof Num n && n.inner() == k; }
+  private static Boolean decided(Cond c){ return c instanceof Bool b ? b.value() : null; }
+
+  static Exp exp(Exp e){
+    return switch (e){
+      case Add a -> {
+        Exp l= exp(a.left()), r= exp(a.right());
+        if (l instanceof Num x && r instanceof Num y){ yield new Num(x.inner() + y.inner()); }
+        if (isNum(r, 0)){ yield l; }
+        if (isNum(l, 0)){ yield r; }
+        yield new Add(l, r);
+      }
+      case Sub s -> {
+        Exp l= exp(s.left()), r= exp(s.right());
+        if (l instanceof Num x && r instanceof Num y){ yield new Num(x.inner() - y.inner()); }
+        if (isNum(r, 0)){ yield l; }
+        if (l.equals(r) && pureExp(l)){ yield new Num(0); }
+        yield new Sub(l, r);
+      }
+      case Mul m -> {
+        Exp l= exp(m.left()), r= exp(m.right());
+        if (l instanceof Num x && r instanceof Num y){ yield new Num(x.inner() * y.inner()); }
+        if (isNum(r, 1)){ yield l; }
+        if (isNum(l, 1)){ yield r; }
+        if ((isNum(r, 0) && pureExp(l)) || (isNum(l, 0) && pureExp(r))){ yield new Num(0); }
+        yield new Mul(l, r);
+      }
+      case Div d -> {
+        Exp l= exp(d.left()), r= exp(d.right());
+        if (l instanceof Num x && r instanceof Num y && y.inner() != 0){ yield new Num(x.inner() / y.inner()); }
+        if (isNum(r, 1)){ yield l; }
+        yield new Div(l, r);
+      }
+      case BarrelLR b -> new BarrelLR(index(b.index()));
+      case BarrelFB b -> new BarrelFB(index(b.index()));
+      case FastExp f  -> exp(f.source());
+      default -> e;
+    };
+  }
+  // A constant index <= 0 reads the closest barrel, as no index does
+  private static Exp index(Exp index){
+    if (index == null){ return null; }
+    Exp res= exp(index);
+    return res instanceof Num n && n.inner() <= 0 ? null : res;
+  }
+
+  static Cond cond(Cond c){
+    return switch (c){
+      case Lt l -> compare(c, exp(l.left()), exp(l.right()));
+      case Gt g -> compare(c, exp(g.left()), exp(g.right()));
+      case Eq q -> compare(c, exp(q.left()), exp(q.right()));
+      case Not n -> {
+        Cond inner= cond(n.cond());
+        if (inner instanceof Bool b){ yield new Bool(!b.value()); }
+        if (inner instanceof Not nn){ yield nn.cond(); }
+        yield new Not(inner);
+      }
+      case And a -> {//both sides are evaluated: a decided side can go, the other must stay unless pure
+        Cond l= cond(a.left()), r= cond(a.right());
+        if (Boolean.TRUE.equals(decided(r))){ yield l; }
+        if (Boolean.TRUE.equals(decided(l))){ yield r; }
+        if ((Boolean.FALSE.equals(decided(r)) && pureCond(l)) || (Boolean.FALSE.equals(decided(l)) && pureCond(r))){
+          yield new Bool(false);
+        }
+        yield new And(l, r);
+      }
+      case Or o -> {
+        Cond l= cond(o.left()), r= cond(o.right());
+        if (Boolean.FALSE.equals(decided(r))){ yield l; }
+        if (Boolean.FALSE.equals(decided(l))){ yield r; }
+        if ((Boolean.TRUE.equals(decided(r)) && pureCond(l)) || (Boolean.TRUE.equals(decided(l)) && pureCond(r))){
+          yield new Bool(true);
+        }
+        yield new Or(l, r);
+      }
+      case FastCond f -> cond(f.source());
+      default -> c;
+    };
+  }
+  private static Cond compare(Cond c, Exp l, Exp r){
+    if (l instanceof Num x && r instanceof Num y){
+      int a= x.inner(), b= y.inner();
+      return new Bool(switch (c){
+        case Lt lt -> a < b;
+        case Gt gt -> a > b;
+        default    -> a == b;
+      });
+    }
+    if (l.equals(r) && pureExp(l)){ return new Bool(c instanceof Eq); }
+    return switch (c){
+      case Lt lt -> new Lt(l, r);
+      case Gt gt -> new Gt(l, r);
+      default    -> new Eq(l, r);
+    };
+  }
+
+  private static List<Stm> stms(List<Stm> ss){
+    var res= new ArrayList<Stm>(ss.size());
+    for (Stm s: ss){ stm(s, res); }
+    return Collections.unmodifiableList(res);
+  }
+  // The body left to an if/while/loop whose block was pruned: it is already folded
+  private static final Block nothing= new Block(List.of(new If(new Bool(false), new Block(List.of(new Wait(null))), null)));
+  // The optimized block, or null if all its statements were pruned
+  private static Block block(Block b){
+    if (b == null){ return null; }
+    List<Stm> ss= stms(b.ss());
+    return ss.isEmpty() ? null : new Block(ss);
+  }
+  // Adds the optimized statement(s) to res; nothing if it is statically dead
+  private static void stm(Stm s, List<Stm> res){
+    switch (s){
+      case Loop l -> {
+        Block body= block(l.b());
+        res.add(new Loop(body != null ? body : nothing));
+      }
+      case Block b -> {
+        Block inner= block(b);
+        if (inner != null){ res.add(inner); }
+      }
+      case If i -> {
+        Cond c= cond(i.cond());
+        Block then= block(i.then()), otherwise= block(i.otherwise());
+        Boolean d= decided(c);
+        if (d != null){//a decided condition is pure: only the taken block is left
+          Block taken= d ? then : otherwise;
+          if (taken != null){ res.addAll(taken.ss()); }
+          return;
+        }
+        if (then == null && otherwise == null && pureCond(c)){ return; }
+        res.add(new If(c, then != null ? then : nothing, otherwise));
+      }
+      case While w -> {
+        Cond c= cond(w.cond());
+        Block body= block(w.body());
+        if (Boolean.FALSE.equals(decided(c))){ return; }
+        if (body == null && pureCond(c)){ return; }//nothing could ever change c
+        if (body == null){ res.add(new While(c, nothing)); return; }
+        res.add(Boolean.TRUE.equals(decided(c)) ? new Loop(body) : new While(c, body));
+      }
+      case Move m -> res.add(new Move(times(m.steps())));
+      case Wait w -> res.add(new Wait(times(w.time())));
+      case Ass a  -> res.add(new Ass(a.varName(), a.slot(), exp(a.value())));
+      default -> res.add(s);
+    }
+  }
+  // A constant count <= 1 acts once, as no count does
+  private static Exp times(Exp e){
+    if (e == null){ return null; }
+    Exp res= exp(e);
+    return res instanceof Num n && n.inner() <= 1 ? null : res;
+  }
+}
@@ -1,11 +1,19 @@
 package parser;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 //Notes to self
 // The Parser class is responsible for converting the textual representation
 // of a robot program into an AST.
@@ -14,48 +22,140 @@ import java.util.List;
 // grammar, using the Tokenizer to break the input into tokens, and then
 // constructing AST nodes (Programs, Statements, Expressions, Conditions)
 // that represent the program structure.
+// Each production that has alternatives switches on the Kind of the next token,
+// so the cost of choosing does not grow with the number of keywords.
 public class Parser {
   private final Tokenizer t;
+  private final SourceMap spans= new SourceMap();
+  private final Symbols symbols= new Symbols();
 
   // Creates a parser for the given text
   public Parser(String text){ t= new Tokenizer(text); }
 
-  // Creates a parser that reads from the given file path
+  // Creates a parser that reads from the given file path.
+  // The bytes of the file are lexed directly (see AsciiBytes): small files are read
+  // into a byte array, large ones are memory mapped, so the source is never
+  // copied into a String.
   public Parser(Path path){ t= new Tokenizer(readFromPath(path)); }
 
-  // Utility method to read text from a file path
-  static String readFromPath(Path path){//This code show how to read a file
-    try {return Files.readString(path); }//in modern Java
+  // Creates a parser that reads the whole file behind the channel, memory mapped.
+  // The channel can be closed once the parser is created.
+  public Parser(FileChannel channel){ t= new Tokenizer(map(channel)); }
+
+  // Files larger than this are memory mapped instead of read
+  static final long mapThreshold= 1 << 16;
+
+  // Utility method to read the bytes of a file path
+  static CharSequence readFromPath(Path path){
+    try (var channel= FileChannel.open(path, StandardOpenOption.READ)){
+      if (channel.size() > mapThreshold){ return map(channel); }
+      var bytes= ByteBuffer.allocate((int) channel.size());
+      while (bytes.hasRemaining() && channel.read(bytes) >= 0){}
+      return new AsciiBytes(bytes.flip());
+    }
+    catch (IOException ieo){ throw new UncheckedIOException(ieo); }
+  }
+
+  // Maps the whole file behind the channel, read only
+  static CharSequence map(FileChannel channel){
+    try { return new AsciiBytes(channel.map(MapMode.READ_ONLY, 0, channel.size())); }
     catch (IOException ieo){ throw new UncheckedIOException(ieo); }
   }
 
+  /**The outcome of parsing one file with parseAll:
+   * either the program or the failure is null, never both.*/
+  public record Result(Program program, ParserFailureException failure){
+    public Result{ assert (program == null) != (failure == null); }
+    public boolean ok(){ return program != null; }
+  }
+
+  // Parses every .prog file in the directory concurrently, on the common ForkJoinPool
+  public static Map<Path,Result> parseAll(Path dir){ return parseAll(dir, ForkJoinPool.commonPool()); }
+
+  // Parses every .prog file in the directory concurrently, on the given pool.
+  // The map is ordered by path. Parse errors are reported in the map;
+  // I/O errors are thrown as UncheckedIOException.
+  public static Map<Path,Result> parseAll(Path dir, ForkJoinPool pool){
+    var files= new ArrayList<Path>();
+    try (var stream= Files.newDirectoryStream(dir, "*.prog")){ stream.forEach(files::add); }
+    catch (IOException ieo){ throw new UncheckedIOException(ieo); }
+    Collections.sort(files);
+    var results= new Result[files.size()];
+    pool.invoke(new ParseAll(files, results, 0, files.size()));
+    var res= new LinkedHashMap<Path,Result>();
+    for (int i= 0; i < results.length; i++){ res.put(files.get(i), results[i]); }
+    return Collections.unmodifiableMap(res);
+  }
+
+  // Fork/join task parsing files[from..to): halves are split until a single file is left
+  @SuppressWarnings("serial")
+  private static class ParseAll extends RecursiveAction{
+    private final List<Path> files;
+    private final Result[] results;
+    private final int from;
+    private final int to;
+    ParseAll(List<Path> files, Result[] results, int from, int to){
+      this.files= files;
+      this.results= results;
+      this.from= from;
+      this.to= to;
+    }
+    @Override protected void compute(){
+      if (to - from > 1){
+        int mid= (from + to) >>> 1;
+        invokeAll(new ParseAll(files, results, from, mid), new ParseAll(files, results, mid, to));
+        return;
+      }
+      if (to == from){ return; }
+      try { results[from]= new Result(new Parser(files.get(from)).parse(), null); }
+      catch (ParserFailureException pfe){ results[from]= new Result(null, pfe); }
+    }
+  }
+
   // The main parsing method that parses a complete program
   // A program consists of a sequence of statements
   public Program parse(){
     ArrayList<Stm> ss= new ArrayList<>();
     while (t.hasNext()){ ss.add(parseSingleStmt()); }
-    return new Program(Collections.unmodifiableList(ss));
+    t.lineStartsTo(spans);
+    return new Program(Collections.unmodifiableList(ss), spans);
+  }
+
+  // Parses a complete program like parse, into the same AST and spans, but with
+  // an explicit stack instead of recursion (see StackParser): deeply nested
+  // expressions and blocks can not overflow the Java stack
+  public Program parseIterative(){
+    List<Stm> ss= new StackParser(t, spans, symbols).parse();
+    t.lineStartsTo(spans);
+    return new Program(Collections.unmodifiableList(ss), spans);
+  }
+
+  // Records the Span of a node, from the mark taken before parsing it
+  private <T> T spanned(int from, T node){
+    spans.put(node, from, t.consumed());
+    return node;
   }
 
   // Parses a single statement, which could be an action, block, loop, if, while, or assignment
+  // The kind of the next token selects the statement, with a single switch
   Stm parseSingleStmt() {
-    if (t.hasNext("move")) return parseMove();
-    if (t.hasNext("turnL")) return parseTurnL();
-    if (t.hasNext("turnR")) return parseTurnR();
-    if (t.hasNext("turnAround")) return parseTurnAround();
-    if (t.hasNext("takeFuel")) return parseTakeFuel();
-    if (t.hasNext("wait")) return parseWait();
-    if (t.hasNext("loop")) return parseLoop();
-    if (t.hasNext("if")) return parseIf();
-    if (t.hasNext("while")) return parseWhile();
-    if (t.hasNext("shieldOn")) return parseShieldOn();
-    if (t.hasNext("shieldOff")) return parseShieldOff();
-    if (t.hasNext("{")) return parseBlock();
-    // Check for variable assignment
-    if (t.hasNextVar()) {
-      return parseAssignment();
-    }
-    throw t.errNoStmt(t.next());
+    if (t.hasNext(Kind.OpenCurly)){ return parseBlock(); }//a block records its own span
+    int from= t.mark();
+    return spanned(from, switch (t.peek()) {
+      case Move       -> parseMove();
+      case TurnL      -> parseTurnL();
+      case TurnR      -> parseTurnR();
+      case TurnAround -> parseTurnAround();
+      case TakeFuel   -> parseTakeFuel();
+      case Wait       -> parseWait();
+      case Loop       -> parseLoop();
+      case If         -> parseIf();
+      case While      -> parseWhile();
+      case ShieldOn   -> parseShieldOn();
+      case ShieldOff  -> parseShieldOff();
+      case Variable   -> parseAssignment();// Check for variable assignment
+      default -> throw t.errNoStmt();
+    });
   }
   //declare methods like
   //Stm parseMove() {..}
@@ -63,148 +163,150 @@ public class Parser {
 
   // Parses a variable assignment statement
   Stm parseAssignment() {
-    String varNameWithDollar = t.nextVar();
-    String varName = varNameWithDollar.substring(1); // Remove $ prefix
-    t.next("=");
+    String varName = t.nextVarName();
+    int slot = symbols.slot(varName);
+    t.next(Kind.Assign);
     Exp value = parseExpression();
-    t.next(";");
-    return new Ass(varName, value);
+    t.next(Kind.Semicolon);
+    return new Ass(varName, slot, value);
   }
 
   // Parses a variable reference expression
   Exp parseVar() {
-    String varNameWithDollar = t.nextVar();
-    String varName = varNameWithDollar.substring(1); // Remove $ prefix
-    return new Var(varName);
+    String varName = t.nextVarName();
+    return new Var(varName, symbols.slot(varName));
   }
 
   // Parses an if statement with elif clauses
   // This handles the complex case where an if is followed by elif clauses
   Stm parseIfWithElif(Cond firstCond, Block firstBlock) {
-    t.next("elif");
-    t.next("(");
+    int from= t.mark();
+    t.next(Kind.Elif);
+    t.next(Kind.OpenRound);
     Cond elifCond = parseCondition();
-    t.next(")");
+    t.next(Kind.CloseRound);
     Block elifBlock = parseBlock();
     Block otherwiseBlock = null;
-    if (t.hasNext("elif")) {
-      otherwiseBlock = new Block(List.of(parseIfWithElif(elifCond, elifBlock)));
-    } else if (t.hasNext("else")) {
-      t.next("else");
+    if (t.hasNext(Kind.Elif)) {
+      otherwiseBlock = new Block(List.of(spanned(from, parseIfWithElif(elifCond, elifBlock))));
+    } else if (t.hasNext(Kind.Else)) {
+      t.next(Kind.Else);
       Block elseBlock = parseBlock();
-      otherwiseBlock = new Block(List.of(new If(elifCond, elifBlock, elseBlock)));
+      otherwiseBlock = new Block(List.of(spanned(from, new If(elifCond, elifBlock, elseBlock))));
     } else {
-      otherwiseBlock = new Block(List.of(new If(elifCond, elifBlock, null)));
+      otherwiseBlock = new Block(List.of(spanned(from, new If(elifCond, elifBlock, null))));
     }
+    spanned(from, otherwiseBlock);
     return new If(firstCond, firstBlock, otherwiseBlock);
   }
 
   // Parses a move action, which may have an optional argument
   Stm parseMove() {
-    t.next("move");
+    t.next(Kind.Move);
     Exp steps = null;
-    if (t.hasNext("(")) {
-      t.next("(");
+    if (t.hasNext(Kind.OpenRound)) {
+      t.next(Kind.OpenRound);
       steps = parseExpression();
-      t.next(")");
+      t.next(Kind.CloseRound);
     }
-    t.next(";");
+    t.next(Kind.Semicolon);
     return new Move(steps);
   }
 
   // Parses a turnL action
   Stm parseTurnL() {
-    t.next("turnL");
-    t.next(";");
+    t.next(Kind.TurnL);
+    t.next(Kind.Semicolon);
     return new TurnL();
   }
 
   // Parses a turnR action
   Stm parseTurnR() {
-    t.next("turnR");
-    t.next(";");
+    t.next(Kind.TurnR);
+    t.next(Kind.Semicolon);
     return new TurnR();
   }
 
   // Parses a turnAround action
   Stm parseTurnAround() {
-    t.next("turnAround");
-    t.next(";");
+    t.next(Kind.TurnAround);
+    t.next(Kind.Semicolon);
     return new TurnAround();
   }
 
   // Parses a takeFuel action
   Stm parseTakeFuel() {
-    t.next("takeFuel");
-    t.next(";");
+    t.next(Kind.TakeFuel);
+    t.next(Kind.Semicolon);
     return new TakeFuel();
   }
 
   // Parses a wait action, which may have an optional argument
   Stm parseWait() {
-    t.next("wait");
+    t.next(Kind.Wait);
     Exp time = null;
-    if (t.hasNext("(")) {
-      t.next("(");
+    if (t.hasNext(Kind.OpenRound)) {
+      t.next(Kind.OpenRound);
       time = parseExpression();
-      t.next(")");
+      t.next(Kind.CloseRound);
     }
-    t.next(";");
+    t.next(Kind.Semicolon);
     return new Wait(time);
   }
 
   // Parses a loop statement
   Stm parseLoop() {
-    t.next("loop");
+    t.next(Kind.Loop);
     Block block = parseBlock();
     return new Loop(block);
   }
 
   // Parses a block of statements enclosed in curly braces
   Block parseBlock() {
-    t.next("{");
+    int from= t.mark();
+    t.next(Kind.OpenCurly);
     List<Stm> statements = new ArrayList<>();
     if (!t.hasNext()) {
       throw t.fail("Unexpected end of input. Expected statement or '}'");
     }
-    if (t.hasNext("}")) {
+    if (t.hasNext(Kind.CloseCurly)) {
       throw t.emptyBlock();
     }
     do {
       statements.add(parseSingleStmt());
-    } while (t.hasNext() && !t.hasNext("}"));
-    t.next("}");
-    return new Block(Collections.unmodifiableList(statements));
+    } while (t.hasNext() && !t.hasNext(Kind.CloseCurly));
+    t.next(Kind.CloseCurly);
+    return spanned(from, new Block(Collections.unmodifiableList(statements)));
   }
 
   // Parses a shieldOn action
   Stm parseShieldOn() {
-    t.next("shieldOn");
-    t.next(";");
+    t.next(Kind.ShieldOn);
+    t.next(Kind.Semicolon);
     return new ShieldOn();
   }
 
   // Parses a shieldOff action
   Stm parseShieldOff() {
-    t.next("shieldOff");
-    t.next(";");
+    t.next(Kind.ShieldOff);
+    t.next(Kind.Semicolon);
     return new ShieldOff();
   }
 
   // Parses an if statement, which has a condition and then block,
   // and may have an elif sequence or else block
   Stm parseIf() {
-    t.next("if");
-    t.next("(");
+    t.next(Kind.If);
+    t.next(Kind.OpenRound);
     Cond cond = parseCondition();
-    t.next(")");
+    t.next(Kind.CloseRound);
     Block thenBlock = parseBlock();
 
     // Check for elif or else
-    if (t.hasNext("elif")) {
+    if (t.hasNext(Kind.Elif)) {
       return parseIfWithElif(cond, thenBlock);
-    } else if (t.hasNext("else")) {
-      t.next("else");
+    } else if (t.hasNext(Kind.Else)) {
+      t.next(Kind.Else);
       Block elseBlock = parseBlock();
       return new If(cond, thenBlock, elseBlock);
     }
@@ -214,10 +316,10 @@ public class Parser {
 
   // Parses a while statement
   Stm parseWhile() {
-    t.next("while");
-    t.next("(");
+    t.next(Kind.While);
+    t.next(Kind.OpenRound);
     Cond cond = parseCondition();
-    t.next(")");
+    t.next(Kind.CloseRound);
     Block body = parseBlock();
 
     return new While(cond, body);
@@ -225,213 +327,211 @@ public class Parser {
 
   // Parses a condition, which could be a comparison or logical operation
   Cond parseCondition() {
-    if (t.hasNext("lt")) return parseLt();
-    if (t.hasNext("gt")) return parseGt();
-    if (t.hasNext("eq")) return parseEq();
-    if (t.hasNext("and")) return parseAnd();
-    if (t.hasNext("or")) return parseOr();
-    if (t.hasNext("not")) return parseNot();
-    throw t.fail("Expected condition (lt, gt, eq, and, or, not)");
+    int from= t.mark();
+    return spanned(from, switch (t.peek()) {
+      case Lt  -> parseLt();
+      case Gt  -> parseGt();
+      case Eq  -> parseEq();
+      case And -> parseAnd();
+      case Or  -> parseOr();
+      case Not -> parseNot();
+      default -> throw t.fail("Expected condition (lt, gt, eq, and, or, not)");
+    });
   }
 
   // Parses a logical AND condition
   Cond parseAnd() {
-    t.next("and");
-    t.next("(");
+    t.next(Kind.And);
+    t.next(Kind.OpenRound);
     Cond left = parseCondition();
-    t.next(",");
+    t.next(Kind.Comma);
     Cond right = parseCondition();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new And(left, right);
   }
 
   // Parses a logical OR condition
   Cond parseOr() {
-    t.next("or");
-    t.next("(");
+    t.next(Kind.Or);
+    t.next(Kind.OpenRound);
     Cond left = parseCondition();
-    t.next(",");
+    t.next(Kind.Comma);
     Cond right = parseCondition();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Or(left, right);
   }
 
   // Parses a logical NOT condition
   Cond parseNot() {
-    t.next("not");
-    t.next("(");
+    t.next(Kind.Not);
+    t.next(Kind.OpenRound);
     Cond cond = parseCondition();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Not(cond);
   }
 
   // Parses a less-than comparison condition
   Cond parseLt() {
-    t.next("lt");
-    t.next("(");
+    t.next(Kind.Lt);
+    t.next(Kind.OpenRound);
     Exp left = parseExpression();
-    t.next(",");
+    t.next(Kind.Comma);
     Exp right = parseExpression();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Lt(left, right);
   }
 
   // Parses a greater-than comparison condition
   Cond parseGt() {
-    t.next("gt");
-    t.next("(");
+    t.next(Kind.Gt);
+    t.next(Kind.OpenRound);
     Exp left = parseExpression();
-    t.next(",");
+    t.next(Kind.Comma);
     Exp right = parseExpression();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Gt(left, right);
   }
 
   // Parses an equality comparison condition
   Cond parseEq() {
-    t.next("eq");
-    t.next("(");
+    t.next(Kind.Eq);
+    t.next(Kind.OpenRound);
     Exp left = parseExpression();
-    t.next(",");
+    t.next(Kind.Comma);
     Exp right = parseExpression();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Eq(left, right);
   }
 
   // Parses an expression, which could be a number, sensor, variable, or arithmetic operation
   Exp parseExpression() {
-    if (t.hasNext("fuelLeft") || t.hasNext("oppLR") || t.hasNext("oppFB") || t.hasNext("numBarrels") || t.hasNext("barrelLR") || t.hasNext("barrelFB") || t.hasNext("wallDist")) {
-      return parseSens();
-    }
-    if (t.hasNext("add")) return parseAdd();
-    if (t.hasNext("sub")) return parseSub();
-    if (t.hasNext("mul")) return parseMul();
-    if (t.hasNext("div")) return parseDiv();
-    if (t.hasNextVar()) { return parseVar(); }
-    if (t.hasNextNumber()) { return parseNumber(); }
-    throw t.fail("Expected expression");
+    int from= t.mark();
+    return spanned(from, switch (t.peek()) {
+      case FuelLeft, OppLR, OppFB, NumBarrels, BarrelLR, BarrelFB, WallDist -> parseSens();
+      case Add -> parseAdd();
+      case Sub -> parseSub();
+      case Mul -> parseMul();
+      case Div -> parseDiv();
+      case Variable -> parseVar();
+      case Number -> parseNumber();
+      default -> throw t.fail("Expected expression");
+    });
   }
   Sens parseSens() {
-    if (t.hasNext("fuelLeft")) return parseFuelLeft();
-    if (t.hasNext("oppLR")) return parseOppLR();
-    if (t.hasNext("oppFB")) return parseOppFB();
-    if (t.hasNext("numBarrels")) return parseNumBarrels();
-    if (t.hasNext("barrelLR")) return parseBarrelLR();
-    if (t.hasNext("barrelFB")) return parseBarrelFB();
-    if (t.hasNext("wallDist")) return parseWallDist();
-
-
-    throw t.fail("Expected sensor expression");
+    return switch (t.peek()) {
+      case FuelLeft   -> parseFuelLeft();
+      case OppLR      -> parseOppLR();
+      case OppFB      -> parseOppFB();
+      case NumBarrels -> parseNumBarrels();
+      case BarrelLR   -> parseBarrelLR();
+      case BarrelFB   -> parseBarrelFB();
+      case WallDist   -> parseWallDist();
+      default -> throw t.fail("Expected sensor expression");
+    };
   }
 
 
   // Parses an addition operation
   Exp parseAdd() {
-    t.next("add");
-    t.next("(");
+    t.next(Kind.Add);
+    t.next(Kind.OpenRound);
     Exp left = parseExpression();
-    t.next(",");
+    t.next(Kind.Comma);
     Exp right = parseExpression();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Add(left, right);
   }
 
   // Parses a subtraction operation
   Exp parseSub() {
-    t.next("sub");
-    t.next("(");
+    t.next(Kind.Sub);
+    t.next(Kind.OpenRound);
     Exp left = parseExpression();
-    t.next(",");
+    t.next(Kind.Comma);
     Exp right = parseExpression();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Sub(left, right);
   }
 
   // Parses a multiplication operation
   Exp parseMul() {
-    t.next("mul");
-    t.next("(");
+    t.next(Kind.Mul);
+    t.next(Kind.OpenRound);
     Exp left = parseExpression();
-    t.next(",");
+    t.next(Kind.Comma);
     Exp right = parseExpression();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Mul(left, right);
   }
 
   // Parses a division operation
   Exp parseDiv() {
-    t.next("div");
-    t.next("(");
+    t.next(Kind.Div);
+    t.next(Kind.OpenRound);
     Exp left = parseExpression();
-    t.next(",");
+    t.next(Kind.Comma);
     Exp right = parseExpression();
-    t.next(")");
+    t.next(Kind.CloseRound);
     return new Div(left, right);
   }
 
   // Parses a fuelLeft sensor expression
   Sens parseFuelLeft() {
-    t.next("fuelLeft");
+    t.next(Kind.FuelLeft);
     return new FuelLeft();
   }
 
   // Parses an oppLR sensor expression
   Sens parseOppLR() {
-    t.next("oppLR");
+    t.next(Kind.OppLR);
     return new OppLR();
   }
 
   // Parses an oppFB sensor expression
   // Parses an oppFB sensor expression
   Sens parseOppFB() {
-    t.next("oppFB");
+    t.next(Kind.OppFB);
     return new OppFB();
   }
 
   // Parses a numBarrels sensor expression
   Sens parseNumBarrels() {
-    t.next("numBarrels");
+    t.next(Kind.NumBarrels);
     return new NumBarrels();
   }
 
   // Parses a barrelLR sensor expression with an optional index
   Sens parseBarrelLR() {
-    t.next("barrelLR");
+    t.next(Kind.BarrelLR);
     Exp index = null;
-    if (t.hasNext("(")) {
-      t.next("(");
+    if (t.hasNext(Kind.OpenRound)) {
+      t.next(Kind.OpenRound);
       index = parseExpression();
-      t.next(")");
+      t.next(Kind.CloseRound);
     }
     return new BarrelLR(index);
   }
 
   // Parses a barrelFB sensor expression with an optional index
   Sens parseBarrelFB() {
-    t.next("barrelFB");
+    t.next(Kind.BarrelFB);
     Exp index = null;
-    if (t.hasNext("(")) {
-      t.next("(");
+    if (t.hasNext(Kind.OpenRound)) {
+      t.next(Kind.OpenRound);
       index = parseExpression();
-      t.next(")");
+      t.next(Kind.CloseRound);
     }
     return new BarrelFB(index);
   }
 
   // Parses a wallDist sensor expression
   Sens parseWallDist() {
-    t.next("wallDist");
+    t.next(Kind.WallDist);
     return new WallDist();
   }
 
   // Parses a number literal
   Exp parseNumber() {
-    String numStr = t.nextNumber();
-    try {
-      int value = Integer.parseInt(numStr);
-      return new Num(value);
-    } catch (NumberFormatException e) {
-      throw t.fail("Invalid number format: " + numStr);
-    }
+    return new Num(t.nextInt());
   }
 }
\ No newline at end of file
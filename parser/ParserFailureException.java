@@ -1,5 +1,18 @@
 package parser;
 @SuppressWarnings("serial")
 public class ParserFailureException extends RuntimeException {
-  public ParserFailureException(String msg){ super(msg); }
+  private final int line;
+  private final int column;
+  public ParserFailureException(String msg){ this(msg, 0, 0); }
+  /**line and column (both starting from 1) of the start of the token that made parsing fail,
+   * or of the end of the input if it ended too early*/
+  public ParserFailureException(String msg, int line, int column){
+    super(msg);
+    this.line= line;
+    this.column= column;
+  }
+  /**@return the line where the failure was detected, or 0 if unknown*/
+  public int line(){ return line; }
+  /**@return the column where the failure was detected, or 0 if unknown*/
+  public int column(){ return column; }
 }
@@ -11,16 +11,21 @@ import robotGame.OuterWorld;
 // It manages the execution of the program in the robot's world, ensuring that
 // exactly one action is performed per step of execution.
 //
-// Program, ExamplePrograms, and Parser are the only public classes in the parser package.
+// Program, ExamplePrograms, and Parser are the main public classes in the parser package.
 // All other types are only used inside this package to implement the robot language.
+// The SourceMap of a parsed program maps its nodes back to the source lines.
 
 /**Program represents the AST of a robot program.
- * Program, ExamplePrograms and Parser are the only public class in the package parser.
+ * Program, ExamplePrograms and Parser are the main public classes in the package parser,
+ * together with the Span/SourceMap used to map nodes back to the source.
  * All other types are only used inside this package.
  */
-public record Program(List<Stm> ss){
-  // Ensures that the statement list is not null
-  public Program{ Objects.requireNonNull(ss); }
+public record Program(List<Stm> ss, SourceMap spans) implements Mind{
+  // Ensures that the statement list and the source map are not null
+  public Program{ Objects.requireNonNull(ss); Objects.requireNonNull(spans); }
+
+  // A program with no source information, as built by hand in ExamplePrograms
+  public Program(List<Stm> ss){ this(ss, SourceMap.empty); }
 
   // Executes the program in the given world context.
   // This continues execution until either:
@@ -32,11 +37,54 @@ public record Program(List<Stm> ss){
     var self= this;
     while(!w.used() && !self.ss.isEmpty()){
       var stm= self.ss.getFirst().execute(w);
-      self = new Program(Util.updateFirst(stm,self.ss));
+      self = new Program(Util.updateFirst(stm,self.ss), spans);
+    }
+    return self;
+  }
+
+  // As execute, but at most budget.perTurn() statements are executed.
+  // If the budget runs out before an action, the robot waits instead: the rest of
+  // the program is executed on the next turns
+  public Program execute(OuterWorld w, Budget budget){
+    var self= this;
+    int left= budget.perTurn();
+    while(!w.used() && !self.ss.isEmpty()){
+      if (left-- == 0){ budget.exhaust(); w.doWait(); break; }
+      budget.step();
+      var stm= self.ss.getFirst().execute(w);
+      self = new Program(Util.updateFirst(stm,self.ss), spans);
     }
     return self;
   }
 
+  // This program as a Mind running within the budget, turn after turn
+  public Mind metered(Budget budget){ return w->execute(w, budget).metered(budget); }
+
+  // The same program, with its conditions and expressions compiled to closures
+  // specialized by shape (see Closures). It prints and runs exactly as this one,
+  // but the spans of the rebuilt statements are not in its SourceMap
+  public Program specialized(){ return Closures.specialize(this); }
+
+  // An equivalent program with constants folded, arithmetic simplified and the
+  // statically dead branches removed (see Optimizer). The OuterWorld calls are the same;
+  // the spans of the rebuilt statements are not in its SourceMap
+  public Program optimized(){ return Optimizer.optimize(this); }
+
+  // Writes this program in a compact binary format (see BinaryFormat).
+  // Spans are not written. Throws IllegalArgumentException if the program is
+  // nested deeper than BinaryFormat.maxDepth.
+  public byte[] toBytes(){ return BinaryFormat.write(this); }
+
+  // Reads back a program written by toBytes.
+  // Throws IllegalArgumentException if the bytes are not a valid binary program,
+  // which includes nesting deeper than BinaryFormat.maxDepth.
+  public static Program fromBytes(byte[] bytes){ return BinaryFormat.read(bytes); }
+
+  // Programs are values: two programs with the same statements are equal,
+  // wherever they come from. The SourceMap compares by identity, so it is left out
+  @Override public boolean equals(Object o){ return o instanceof Program p && ss.equals(p.ss); }
+  @Override public int hashCode(){ return ss.hashCode(); }
+
   // Returns a string representation of the program
   @Override public String toString(){ return "Program"+ss; }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**A bounded cache of parsed programs, keyed by file path.
+ * An entry is only used if the file still has the same last modified time
+ * and size as when it was parsed; otherwise the file is parsed again.
+ * When full, the least recently used entry is evicted.
+ * Program and all the AST nodes are immutable, so one cached Program can be
+ * shared by many worlds and threads.*/
+public final class ProgramCache {
+  private record Entry(FileTime modified, long size, Program program){}
+  private final Map<Path,Entry> entries;
+  private final LongAdder hits= new LongAdder();
+  private final LongAdder misses= new LongAdder();
+
+  public ProgramCache(int capacity){
+    if (capacity < 1){ throw new IllegalArgumentException("capacity " + capacity); }
+    entries= new LinkedHashMap<>(16, 0.75f, true){//access order: least recently used first
+      @Override protected boolean removeEldestEntry(Map.Entry<Path,Entry> eldest){
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**@return the program in the file, parsed only if not already cached.
+   * @throws ParserFailureException if the file does not contain a valid program*/
+  public Program get(Path path){
+    path= path.toAbsolutePath().normalize();
+    BasicFileAttributes attrs;
+    try { attrs= Files.readAttributes(path, BasicFileAttributes.class); }
+    catch (IOException ieo){ throw new UncheckedIOException(ieo); }
+    Entry e;
+    synchronized (entries){ e= entries.get(path); }
+    if (e != null && e.modified().equals(attrs.lastModifiedTime()) && e.size() == attrs.size()){
+      hits.increment();
+      return e.program();
+    }
+    misses.increment();
+    //parsing outside of the lock: other files can be served meanwhile
+    Program res= new Parser(path).parse();
+    synchronized (entries){ entries.put(path, new Entry(attrs.lastModifiedTime(), attrs.size(), res)); }
+    return res;
+  }
+
+  /**@return how many calls to get returned a cached program*/
+  public long hits(){ return hits.sum(); }
+
+  /**@return how many calls to get had to parse the file*/
+  public long misses(){ return misses.sum(); }
+
+  /**@return the number of cached programs*/
+  public int size(){ synchronized (entries){ return entries.size(); } }
+}
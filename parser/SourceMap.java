@@ -0,0 +1,64 @@
+package parser;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**Maps the AST nodes created by the Parser back to their Span in the source.
+ * Nodes are records, so two equal nodes can come from different places:
+ * the map is keyed by node identity.
+ * Nodes created while executing (or built by hand, as in ExamplePrograms)
+ * have no Span.*/
+public final class SourceMap {
+  static final SourceMap empty= new SourceMap();
+  // Recording a node while parsing only appends to these arrays;
+  // lines, columns and the lookup index are computed when first asked for.
+  private Object[] nodes= new Object[16];
+  private int[] starts= new int[16];
+  private int[] ends= new int[16];
+  private int size= 0;
+  private int[] lineStarts= {0};
+  private int lines= 1;
+  private Map<Object,Integer> index;
+
+  SourceMap(){}
+
+  void put(Object node, int start, int end){
+    if (size == nodes.length){
+      nodes= Arrays.copyOf(nodes, size * 2);
+      starts= Arrays.copyOf(starts, size * 2);
+      ends= Arrays.copyOf(ends, size * 2);
+    }
+    nodes[size]= node;
+    starts[size]= start;
+    ends[size]= end;
+    size++;
+  }
+
+  // The offsets where each line starts, set by the Parser once the input is consumed
+  void lineStarts(int[] lineStarts, int lines){
+    this.lineStarts= lineStarts;
+    this.lines= lines;
+  }
+
+  /**@return the Span of the given node, or null if the node does not come from the source*/
+  public Span spanOf(Object node){
+    Integer i= index().get(node);
+    if (i == null){ return null; }
+    int start= starts[i];
+    int l= Arrays.binarySearch(lineStarts, 0, lines, start);
+    if (l < 0){ l= -l - 2; }//index of the last line starting before 'start'
+    return new Span(start, ends[i], l + 1, start - lineStarts[l] + 1);
+  }
+
+  private synchronized Map<Object,Integer> index(){
+    if (index != null){ return index; }
+    var res= new IdentityHashMap<Object,Integer>(size);
+    for (int i= 0; i < size; i++){ res.put(nodes[i], i); }
+    index= res;
+    return res;
+  }
+
+  /**@return the number of nodes with a Span*/
+  public int size(){ return size; }
+}
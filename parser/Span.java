@@ -0,0 +1,7 @@
+package parser;
+
+/**A region of the program source: the offsets [start, end) and the
+ * line and column (both starting from 1) where the region starts.*/
+public record Span(int start, int end, int line, int column){
+  @Override public String toString(){ return "line "+line+", column "+column; }
+}
@@ -0,0 +1,297 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+//Notes to self
+// StackParser parses the same grammar as the recursive descent methods of Parser,
+// consuming the same tokens in the same order, and builds the same records.
+// Instead of the Java call stack it keeps the constructs being parsed on an
+// explicit stack of frames, so nesting depth is only limited by memory:
+// thousands of nested add(...) or if{...} levels do not overflow the stack.
+//
+// A frame is a partially parsed construct waiting for a child: a statement,
+// block, condition or expression (see Need). Starting a child either completes at
+// once (numbers, variables, sensors, actions) or pushes a new frame. A completed
+// child is handed to the frame below it, which consumes the tokens following the
+// child and then either asks for another child or completes in turn.
+final class StackParser {
+  private enum Need{ Stm, Block, Cond, Exp }
+
+  private static final class Frame{
+    Kind kind;      // the construct being parsed; OpenCurly for blocks
+    Need need;      // what the next child must be
+    int state;      // how many children were received, for constructs with more than one
+    int from;       // mark of the first token, for the Span
+    Object left;    // first child of binary constructs, else block of If
+    String name;    // variable of an assignment
+    final List<Object> children= new ArrayList<>();// statements of a block; conditions and blocks of if/elif
+    final List<Integer> elifs= new ArrayList<>();  // marks of the elif tokens
+    int slot;                                      // slot of name
+  }
+
+  private final Tokenizer t;
+  private final SourceMap spans;
+  private final Symbols symbols;
+  private Frame[] frames= new Frame[16];
+  private int size= 0;
+
+  StackParser(Tokenizer t, SourceMap spans, Symbols symbols){
+    this.t= t;
+    this.spans= spans;
+    this.symbols= symbols;
+  }
+
+  // Parses statements until the end of the input
+  List<Stm> parse(){
+    var ss= new ArrayList<Stm>();
+    while (t.hasNext()){ ss.add((Stm) run(Need.Stm)); }
+    return ss;
+  }
+
+  // Parses one child of the given kind, looping until no frame is left
+  private Object run(Need need){
+    Object value= start(need);
+    while (true){
+      if (value == null){ value= start(frames[size - 1].need); continue; }
+      if (size == 0){ return value; }
+      value= resume(frames[size - 1], value);
+    }
+  }
+
+  private <T> T spanned(int from, T node){
+    spans.put(node, from, t.consumed());
+    return node;
+  }
+
+  // Pushes a frame waiting for a child; returns null so that the child is started next
+  private Object push(Kind kind, Need need, int from){
+    if (size == frames.length){ frames= Arrays.copyOf(frames, size * 2); }
+    if (frames[size] == null){ frames[size]= new Frame(); }
+    Frame f= frames[size++];
+    f.kind= kind;
+    f.need= need;
+    f.state= 0;
+    f.from= from;
+    f.left= null;
+    f.name= null;
+    f.children.clear();
+    f.elifs.clear();
+    return null;
+  }
+
+  // Pops the top frame, that built the given node
+  private Object complete(Object node){
+    Frame f= frames[--size];
+    return spanned(f.from, node);
+  }
+
+  // Starts parsing a child: returns the node if complete, or null if a frame was pushed
+  private Object start(Need need){
+    return switch (need){
+      case Stm   -> startStm();
+      case Block -> startBlock();
+      case Cond  -> startCond();
+      case Exp   -> startExp();
+    };
+  }
+
+  private Object startStm(){
+    int from= t.mark();
+    Kind k= t.peek();
+    switch (k){
+      case Move, Wait -> {
+        t.next(k);
+        if (t.hasNext(Kind.OpenRound)){ t.next(Kind.OpenRound); return push(k, Need.Exp, from); }
+        t.next(Kind.Semicolon);
+        return spanned(from, k == Kind.Move ? new Move(null) : new Wait(null));
+      }
+      case TurnL, TurnR, TurnAround, TakeFuel, ShieldOn, ShieldOff -> {
+        t.next(k);
+        t.next(Kind.Semicolon);
+        return spanned(from, switch (k){
+          case TurnL      -> new TurnL();
+          case TurnR      -> new TurnR();
+          case TurnAround -> new TurnAround();
+          case TakeFuel   -> new TakeFuel();
+          case ShieldOn   -> new ShieldOn();
+          default         -> new ShieldOff();
+        });
+      }
+      case Loop -> { t.next(k); return push(k, Need.Block, from); }
+      case If, While -> {
+        t.next(k);
+        t.next(Kind.OpenRound);
+        return push(k, Need.Cond, from);
+      }
+      case OpenCurly -> { return startBlock(); }
+      case Variable -> {
+        String name= t.nextVarName();
+        int slot= symbols.slot(name);
+        t.next(Kind.Assign);
+        push(Kind.Assign, Need.Exp, from);
+        frames[size - 1].name= name;
+        frames[size - 1].slot= slot;
+        return null;
+      }
+      default -> throw t.errNoStmt();
+    }
+  }
+
+  private Object startBlock(){
+    int from= t.mark();
+    t.next(Kind.OpenCurly);
+    if (!t.hasNext()) {
+      throw t.fail("Unexpected end of input. Expected statement or '}'");
+    }
+    if (t.hasNext(Kind.CloseCurly)) {
+      throw t.emptyBlock();
+    }
+    return push(Kind.OpenCurly, Need.Stm, from);
+  }
+
+  private Object startCond(){
+    int from= t.mark();
+    Kind k= t.peek();
+    switch (k){
+      case Lt, Gt, Eq -> { t.next(k); t.next(Kind.OpenRound); return push(k, Need.Exp, from); }
+      case And, Or, Not -> { t.next(k); t.next(Kind.OpenRound); return push(k, Need.Cond, from); }
+      default -> throw t.fail("Expected condition (lt, gt, eq, and, or, not)");
+    }
+  }
+
+  private Object startExp(){
+    int from= t.mark();
+    Kind k= t.peek();
+    switch (k){
+      case FuelLeft, OppLR, OppFB, NumBarrels, WallDist -> {
+        t.next(k);
+        return spanned(from, switch (k){
+          case FuelLeft   -> new FuelLeft();
+          case OppLR      -> new OppLR();
+          case OppFB      -> new OppFB();
+          case NumBarrels -> new NumBarrels();
+          default         -> new WallDist();
+        });
+      }
+      case BarrelLR, BarrelFB -> {
+        t.next(k);
+        if (t.hasNext(Kind.OpenRound)){ t.next(Kind.OpenRound); return push(k, Need.Exp, from); }
+        return spanned(from, k == Kind.BarrelLR ? new BarrelLR(null) : new BarrelFB(null));
+      }
+      case Add, Sub, Mul, Div -> { t.next(k); t.next(Kind.OpenRound); return push(k, Need.Exp, from); }
+      case Variable -> {
+        String name= t.nextVarName();
+        return spanned(from, new Var(name, symbols.slot(name)));
+      }
+      case Number -> { return spanned(from, new Num(t.nextInt())); }
+      default -> throw t.fail("Expected expression");
+    }
+  }
+
+  // Gives a completed child to the frame f: returns the node of f if f is now
+  // complete, or null if f needs another child (f.need tells which)
+  private Object resume(Frame f, Object child){
+    switch (f.kind){
+      case OpenCurly -> {
+        f.children.add(child);
+        if (t.hasNext() && !t.hasNext(Kind.CloseCurly)){ return null; }
+        t.next(Kind.CloseCurly);
+        var ss= new ArrayList<Stm>(f.children.size());
+        for (Object s: f.children){ ss.add((Stm) s); }
+        return complete(new Block(Collections.unmodifiableList(ss)));
+      }
+      case Move, Wait -> {
+        t.next(Kind.CloseRound);
+        t.next(Kind.Semicolon);
+        return complete(f.kind == Kind.Move ? new Move((Exp) child) : new Wait((Exp) child));
+      }
+      case Loop -> { return complete(new Loop((Block) child)); }
+      case Assign -> {
+        t.next(Kind.Semicolon);
+        return complete(new Ass(f.name, f.slot, (Exp) child));
+      }
+      case While -> {
+        if (f.state++ == 0){
+          f.left= child;
+          t.next(Kind.CloseRound);
+          f.need= Need.Block;
+          return null;
+        }
+        return complete(new While((Cond) f.left, (Block) child));
+      }
+      case If -> { return resumeIf(f, child); }
+      case BarrelLR, BarrelFB -> {
+        t.next(Kind.CloseRound);
+        return complete(f.kind == Kind.BarrelLR ? new BarrelLR((Exp) child) : new BarrelFB((Exp) child));
+      }
+      case Not -> {
+        t.next(Kind.CloseRound);
+        return complete(new Not((Cond) child));
+      }
+      default -> {//binary expressions and conditions
+        if (f.state++ == 0){
+          f.left= child;
+          t.next(Kind.Comma);
+          return null;
+        }
+        t.next(Kind.CloseRound);
+        return complete(binary(f.kind, f.left, child));
+      }
+    }
+  }
+
+  private static Object binary(Kind k, Object left, Object right){
+    return switch (k){
+      case Add -> new Add((Exp) left, (Exp) right);
+      case Sub -> new Sub((Exp) left, (Exp) right);
+      case Mul -> new Mul((Exp) left, (Exp) right);
+      case Div -> new Div((Exp) left, (Exp) right);
+      case Lt  -> new Lt((Exp) left, (Exp) right);
+      case Gt  -> new Gt((Exp) left, (Exp) right);
+      case Eq  -> new Eq((Exp) left, (Exp) right);
+      case And -> new And((Cond) left, (Cond) right);
+      case Or  -> new Or((Cond) left, (Cond) right);
+      default -> throw new IllegalStateException(k.toString());
+    };
+  }
+
+  // If frames alternate between a condition and a block for the if and each elif,
+  // then get the optional else block
+  private Object resumeIf(Frame f, Object child){
+    if (f.need == Need.Cond){
+      f.children.add(child);
+      t.next(Kind.CloseRound);
+      f.need= Need.Block;
+      return null;
+    }
+    if (f.state == 1){ return completeIf(f, (Block) child); }//the else block
+    f.children.add(child);
+    if (t.hasNext(Kind.Elif)){
+      f.elifs.add(t.mark());
+      t.next(Kind.Elif);
+      t.next(Kind.OpenRound);
+      f.need= Need.Cond;
+      return null;
+    }
+    if (t.hasNext(Kind.Else)){
+      t.next(Kind.Else);
+      f.state= 1;
+      return null;
+    }
+    return completeIf(f, null);
+  }
+
+  // Builds the chain of If, from the last elif back to the first if,
+  // exactly as Parser.parseIfWithElif nests them
+  private Object completeIf(Frame f, Block otherwise){
+    var cs= f.children;
+    for (int i= cs.size() / 2 - 1; i > 0; i--){
+      int from= f.elifs.get(i - 1);
+      If elif= spanned(from, new If((Cond) cs.get(2 * i), (Block) cs.get(2 * i + 1), otherwise));
+      otherwise= spanned(from, new Block(List.of(elif)));
+    }
+    return complete(new If((Cond) cs.get(0), (Block) cs.get(1), otherwise));
+  }
+}
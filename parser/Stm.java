@@ -36,7 +36,7 @@ record Loop(Block b) implements Stm{
 record Block(List<Stm> ss) implements Stm{
   Block{
     if(ss.isEmpty()){ throw new Error(); }
-    for(Stm s:ss){ Objects.requireNonNull(s); }
+    if(!(ss instanceof Seq)){ for(Stm s:ss){ Objects.requireNonNull(s); } }//a Seq is made of checked lists
   }
   public Block execute(OuterWorld w){
     var first= ss.getFirst().execute(w);
@@ -44,6 +44,9 @@ record Block(List<Stm> ss) implements Stm{
     if (first == null){
       return new Block(Util.removeFirst(ss));
     }
+    //a block of a single block runs as the inner one: a loop in tail position
+    //does not nest one level deeper at every iteration
+    if (ss.size() == 1 && first instanceof Block b){ return b; }
     return new Block(Util.updateFirst(first,ss));
   }
 
@@ -204,10 +207,10 @@ record ShieldOff() implements Act {
 }
 
 // Assignment statement that sets a variable to a value.
-// Variables are stored in the OuterWorld and persist across execution steps.
-record Ass(String varName, Exp value) implements Stm {
+// Variables are stored in the OuterWorld, by slot, and persist across execution steps.
+record Ass(String varName, int slot, Exp value) implements Stm {
   public Stm execute(OuterWorld w) {
-    w.setVar(varName, value.evaluate(w));
+    w.setSlot(slot, varName, value.evaluate(w));
     return null;
   }
   @Override public String toString() { return "Ass[$" + varName + "= " + value + "]"; }
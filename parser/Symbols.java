@@ -0,0 +1,19 @@
+package parser;
+
+import java.util.HashMap;
+import java.util.Map;
+//Notes to self
+// Symbols is the symbol table of the program being parsed.
+// Each variable name gets a slot, numbered from 0 in order of first appearance,
+// so that Var and Ass read and write an int frame instead of a map from names.
+final class Symbols {
+  private final Map<String,Integer> slots= new HashMap<>();
+
+  // The slot of the name, a new one if the name is new
+  int slot(String name){
+    Integer res= slots.get(name);
+    if (res != null){ return res; }
+    slots.put(name, slots.size());
+    return slots.size() - 1;
+  }
+}
@@ -1,10 +1,8 @@
 package parser;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.io.BufferedReader;
-import java.io.StringReader;
 //Notes to self
 // The Tokenizer class is responsible for breaking down the input program text
 // into individual tokens that the Parser can process.
@@ -15,69 +13,175 @@ import java.io.StringReader;
 // - Handle error reporting with detailed position information
 // - Validate tokens against expected patterns
 //
-// The tokenizer uses Java's Scanner class with custom delimiters to separate
-// the input into meaningful tokens while handling whitespace appropriately.
+// The tokenizer is a hand written lexer: it scans the input characters once,
+// in place (from a String, or straight from the bytes of a file),
+// left to right, and only remembers the kind (see Kind) and the start/end offsets
+// of the next token. Keywords are resolved to their Kind once, while scanning.
+// Tokens are separated by whitespace, and each of {}(),; is a token on its own.
+// A String for a token is only created when a caller asks for it.
+// Line and column are tracked while scanning, so error positions and the
+// Span of a parsed node are computed without rescanning the input.
 
 //Note: as discussed in class, this code is intended as part of the specific
 //parser and not as general reusable code
 
 public class Tokenizer {
-  private final Scanner s;
-  // Define a pattern to separate tokens by whitespace and special characters
-  private final Pattern delimiters= Pattern.compile("\\s+|(?=[{}(),;])|(?<=[{}(),;])");
-  private final String input;
+  private final CharSequence in; // a String, or the bytes of a file (see AsciiBytes)
+  private final int length;
+  private Kind kind;    // kind of the next token, see Kind
+  private int start;    // offset of the first char of the next token
+  private int end;      // offset after the last char of the next token
+  private int consumed; // offset after the last consumed token, for error reporting
+  private int line= 1;          // line of the next token
+  private int lineStart= 0;     // offset where the line of the next token starts
+  private int[] lineStarts= new int[16]; // offsets where each line starts, for the SourceMap
+  private int lines= 1;
 
-  // Create a new tokenizer for the given input string
-  public Tokenizer(String input){
-    this.input= input;
-    this.s= new Scanner(input).useDelimiter(delimiters);
+  // Create a new tokenizer for the given input; the input is read in place, not copied
+  public Tokenizer(CharSequence input){
+    this.in= input;
+    this.length= input.length();
+    scan(0);
   }
 
-  /**Unobvious way to extract position using java Scanner*/
-  // Calculate the current position in the input for error reporting
-  public String pos(){
-    int remainingSize= !s.hasNext() ? 0 : s.useDelimiter("\\z").next().length();
-    String allCode= new BufferedReader(new StringReader(input)).lines().collect(Collectors.joining("\n"));
-    allCode = allCode.substring(0, allCode.length() - remainingSize);
-    long line = allCode.lines().count();
-    int lastNewlineIndex = allCode.lastIndexOf('\n');
-    int col = allCode.length();
-    if(lastNewlineIndex != -1){ col -= lastNewlineIndex; }
-    return "\n\nat line "+line+", position " + col;
+  // Whitespace separates tokens; same characters as \s in a regex
+  private static boolean isSpace(char c){
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
   }
 
-  // Convert a string to a pattern for exact matching
-  private Pattern patternOf(String str){ return Pattern.compile(Pattern.quote(str)); }
+  // Each of these characters is a token on its own
+  private static boolean isPunct(char c){
+    return c == '{' || c == '}' || c == '(' || c == ')' || c == ',' || c == ';';
+  }
+
+  // Scan the token starting at or after offset i
+  private void scan(int i){
+    while (i < length && isSpace(in.charAt(i))){
+      if (in.charAt(i) == '\n'){ newLine(i + 1); }
+      i++;
+    }
+    start= i;
+    if (i == length){ kind= Kind.End; end= i; return; }
+    if (isPunct(in.charAt(i))){ kind= Kind.punct(in.charAt(i)); end= i + 1; return; }
+    while (i < length && !isSpace(in.charAt(i)) && !isPunct(in.charAt(i))){ i++; }
+    end= i;
+    kind= isNumber() ? Kind.Number : isVar() ? Kind.Variable : Kind.keyword(in, start, end);
+  }
+
+  // Record that a new line starts at offset i
+  private void newLine(int i){
+    line++;
+    lineStart= i;
+    if (lines == lineStarts.length){ lineStarts= Arrays.copyOf(lineStarts, lines * 2); }
+    lineStarts[lines++]= i;
+  }
+
+  // Same as the regex -?[1-9][0-9]*|0 on the current token
+  private boolean isNumber(){
+    int i= start;
+    if (in.charAt(i) == '0'){ return end - start == 1; }
+    if (in.charAt(i) == '-'){ i++; }
+    if (i == end || in.charAt(i) < '1' || in.charAt(i) > '9'){ return false; }
+    for (i++; i < end; i++){ if (!isDigit(in.charAt(i))){ return false; } }
+    return true;
+  }
+
+  // Same as the regex \$[A-Za-z][A-Za-z0-9]* on the current token
+  private boolean isVar(){
+    if (in.charAt(start) != '$' || end - start < 2 || !isLetter(in.charAt(start + 1))){ return false; }
+    for (int i= start + 2; i < end; i++){
+      if (!isLetter(in.charAt(i)) && !isDigit(in.charAt(i))){ return false; }
+    }
+    return true;
+  }
+  private static boolean isDigit(char c){ return c >= '0' && c <= '9'; }
+  private static boolean isLetter(char c){ return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'); }
+
+  // Move past the next token
+  private void advance(){
+    consumed= end;
+    scan(end);
+  }
+
+  // The text of the next token; only allocated when asked for
+  private String text(){ return in.subSequence(start, end).toString(); }
+
+  // Compare the next token with a string, without allocating
+  private boolean is(String str){
+    int len= end - start;
+    if (kind == Kind.End || len != str.length()){ return false; }
+    for (int i= 0; i < len; i++){
+      if (in.charAt(start + i) != str.charAt(i)){ return false; }
+    }
+    return true;
+  }
+
+  // The position of the next token (the one that made parsing fail), for error reporting
+  public String pos(){ return "\n\nat line "+line+", position " + column(); }
+
+  // Column of the next token, starting from 1
+  private int column(){ return start - lineStart + 1; }
+
+  // Offset of the next token, recorded with the node once it is parsed (see Parser.spanned)
+  public int mark(){ return start; }
+
+  // Offset after the last consumed token: the end of the node just parsed
+  int consumed(){ return consumed; }
+
+  // Hands the line table over to a SourceMap, so it can compute lines and columns
+  void lineStartsTo(SourceMap spans){ spans.lineStarts(lineStarts, lines); }
 
   // Check if there are any tokens left
-  public boolean hasNext(){ return s.hasNext(); }
+  public boolean hasNext(){ return kind != Kind.End; }
 
   // Check if the next token matches a specific string
-  public boolean hasNext(String s){ return hasNext(patternOf(s)); }
+  public boolean hasNext(String s){ return is(s); }
 
   // Check if the next token matches a specific pattern
-  public boolean hasNext(Pattern p){ return s.hasNext(p); }
+  public boolean hasNext(Pattern p){
+    return kind != Kind.End && p.matcher(CharBuffer.wrap(in, start, end - start)).matches();
+  }
 
   // Get the next token and advance
-  public String next(){ //or try-catch
-    if (s.hasNext()){ return s.next(); }
-    throw fail("End of tokens");
+  public String next(){
+    if (!hasNext()){ throw fail("End of tokens"); }
+    String res= text();
+    advance();
+    return res;
   }
 
   // Get the next token if it matches the expected value, otherwise error
   public String next(String expectedValue) {
-    return next(patternOf(expectedValue), expectedValue);
+    if (is(expectedValue)){ advance(); return expectedValue; }
+    throw fail(nextOrEnd(), expectedValue);
   }
 
   // Get the next token if it matches the expected pattern, otherwise error
   public String next(Pattern p, String humanReadable){
-    if (s.hasNext(p)){ return s.next(p); }
-    String next= s.hasNext()?s.next():"END OF INPUT";
-    throw fail(next,humanReadable);
+    if (hasNext(p)){ return next(); }
+    throw fail(nextOrEnd(), humanReadable);
+  }
+
+  // The kind of the next token; Kind.End if there are no tokens left
+  public Kind peek(){ return kind; }
+
+  // Check if the next token is of the given kind
+  boolean hasNext(Kind k){ return kind == k; }
+
+  // Consume the next token if it is of the expected kind, otherwise error
+  public void next(Kind expected){
+    if (kind == expected){ advance(); return; }
+    throw fail(nextOrEnd(), expected.text);
   }
 
+  // The offending token for an error message; it is not consumed, so that the
+  // error position is its start
+  private String nextOrEnd(){ return hasNext() ? text() : "END OF INPUT"; }
+
   // Create an error with position information
-  public Error fail(String msg) {throw new ParserFailureException(msg + pos()); }
+  public Error fail(String msg) {
+    throw new ParserFailureException(msg + pos(), line, column());
+  }
 
   // Create an error when an unexpected token is found
   public Error fail(String token, List<String> expected) {
@@ -91,62 +195,70 @@ public class Tokenizer {
 
   // Check if the next token is one of a list of possible values
   public boolean hasNext(List<String> tokens){
-    if (!hasNext()){ return false; }
-    Pattern namesPat = Pattern.compile(String.join("|", tokens));
-    return hasNext(namesPat);
+    for (String token: tokens){ if (is(token)){ return true; } }
+    return false;
   }
 
   // Get the next token if it's one of the expected values, otherwise error
   public String next(List<String> tokens){
-    var name= next();//this throws if end of tokens
-    if (!tokens.contains(name)){ throw fail(name,tokens); }
-    return name;
+    if (!hasNext(tokens)){ throw fail(nextOrEnd(),tokens); }
+    return next();
   }
 
   //- Below here you can add more custom methods to handle specific tokens and error messages
   // Convenience methods for common token patterns
-  void or(){ next("("); }
-  void cr(){ next(")"); }//add your methods here
-
-  // Pattern for matching number tokens
-  private static final Pattern numPat = Pattern.compile("-?[1-9][0-9]*|0");
+  void or(){ next(Kind.OpenRound); }
+  void cr(){ next(Kind.CloseRound); }//add your methods here
 
   // Check if the next token is a number
-  boolean hasNextNumber() { return hasNext(numPat); }
+  boolean hasNextNumber() { return kind == Kind.Number; }
 
   // Get the next token as a number if it matches the pattern
-  String nextNumber() { return next(numPat, "number"); }
+  String nextNumber() {
+    if (hasNextNumber()){ return next(); }
+    throw fail(nextOrEnd(), "number");
+  }
 
-  // Pattern for matching variable names (must start with $)
-  private static final Pattern varPat = Pattern.compile("\\$[A-Za-z][A-Za-z0-9]*");
+  // Get the next token as an int, reading the digits in place
+  int nextInt() {
+    if (!hasNextNumber()){ throw fail(nextOrEnd(), "number"); }
+    boolean negative= in.charAt(start) == '-';
+    long value= 0;
+    for (int i= negative ? start + 1 : start; i < end && value <= Integer.MAX_VALUE + 1L; i++){
+      value= value * 10 + (in.charAt(i) - '0');
+    }
+    if (negative){ value= -value; }
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+      throw fail("Invalid number format: " + text());
+    }
+    advance();
+    return (int) value;
+  }
 
   // Check if the next token is a variable name
-  boolean hasNextVar() { return hasNext(varPat); }
+  boolean hasNextVar() { return kind == Kind.Variable; }
 
   // Get the next token as a variable name if it matches the pattern
-  String nextVar() { return next(varPat, "variable name"); }
-
-  //example code for variable tokens
-  //private static final Pattern varPat = Pattern.compile("\\$[A-Za-z][A-Za-z0-9]*");
-  //boolean matchVar(String s){ return varPat.matcher(s).matches(); }
-  //boolean hasNextVar(){ return hasNext(varPat); }
-  //String nextVar() { return next(varPat,"variable name"); }
-
-  //can you do it similarly for ints?
-  //private static final Pattern numPat = Pattern.compile("-?[1-9][0-9]*|0");
-  //boolean hasNextInt(){ return hasNext(numPat) && s.hasNextInt(); }
-  //int nextInt() {
-  //...
-  //return s.nextInt();
-  //}
+  String nextVar() {
+    if (hasNextVar()){ return next(); }
+    throw fail(nextOrEnd(), "variable name");
+  }
+
+  // Get the next token as a variable name, without the $ prefix
+  String nextVarName() {
+    if (!hasNextVar()){ throw fail(nextOrEnd(), "variable name"); }
+    String res= in.subSequence(start + 1, end).toString();
+    advance();
+    return res;
+  }
 
   // Create an error specifically for when no valid statement is found
-  Error errNoStmt(String token){
+  Error errNoStmt(){
     var options= List.of("variable name","loop","if","while","move","turnL",
             "turnR","turnAround","shieldOn","shieldOff","takeFuel","wait");
-    throw fail(token,options);
+    throw fail(nextOrEnd(),options);
   }
 
   // Create an error specifically for empty blocks
   Error emptyBlock(){ throw fail("Block needs a non empty list of statements"); }
-}
\ No newline at end of file
+}
@@ -1,32 +1,97 @@
 package parser;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
-/**Simple utility methods to work on unmodifiable lists*/
+/**Simple utility methods to work on unmodifiable lists.
+ * The results are persistent Seqs sharing the elements of their inputs,
+ * so the inputs must never be modified afterwards*/
 class Util{
-  static public <T> List<T> removeFirst(List<T> ts){ return ts.subList(1, ts.size()); }
+  static public <T> List<T> removeFirst(List<T> ts){ return Seq.of(ts).rest(); }
   static public <T> List<T> swapFirst(T newFirst, List<T> ts){
-    var res= new ArrayList<>(ts);
     assert newFirst != null;
-    res.set(0,newFirst);
-    return Collections.unmodifiableList(res);
+    return Seq.of(ts).withFirst(newFirst);
   }
   static public <T> List<T> updateFirst(T newFirst, List<T> ts){
     if (newFirst == null){ return removeFirst(ts); }
     return swapFirst(newFirst,ts);
   }
   static public <T> List<T> concat(List<T> ts1, List<T> ts2){
-    var res= new ArrayList<>(ts1);
-    res.addAll(ts2);
-    return Collections.unmodifiableList(res);    
+    if (ts2.isEmpty()){ return ts1; }
+    if (ts1.isEmpty()){ return ts2; }
+    return Seq.of(ts1).then(Seq.of(ts2));
   }
   static public <T> List<T> appendLast(List<T> ts, T newLast){
     Objects.requireNonNull(newLast);
-    var res= new ArrayList<>(ts);
-    res.add(newLast);
-    return Collections.unmodifiableList(res);
+    if (ts.isEmpty()){ return List.of(newLast); }
+    return Seq.of(ts).then(new Seq<>(List.of(newLast), 0, null));
   }
-}
\ No newline at end of file
+}
+
+//Notes to self
+// Seq is a persistent, non empty list: a chain of slices of unmodifiable lists.
+// Dropping or replacing the first element is O(1), and appending a list after
+// another only copies the chain of slices, not the elements: a Loop body followed
+// by the Loop itself is two slices, however long the body is.
+// Each step of Program.execute thus costs O(1) instead of copying the statements,
+// and every older Program stays valid, sharing most of its structure.
+final class Seq<T> extends AbstractList<T>{
+  private final List<T> base; // unmodifiable, never a Seq
+  private final int from;     // first index of base in this slice
+  private final Seq<T> next;  // the following slices, null if none
+  private final int size;
+
+  Seq(List<T> base, int from, Seq<T> next){
+    assert !(base instanceof Seq) && from < base.size();
+    this.base= base;
+    this.from= from;
+    this.next= next;
+    this.size= base.size() - from + (next == null ? 0 : next.size);
+  }
+  // The list as a Seq, without copying it; ts must not be empty
+  static <T> Seq<T> of(List<T> ts){
+    if (ts instanceof Seq<T> s){ return s; }
+    return new Seq<>(ts, 0, null);
+  }
+  // All elements but the first; an empty List if none
+  List<T> rest(){
+    if (from + 1 < base.size()){ return new Seq<>(base, from + 1, next); }
+    return next == null ? List.of() : next;
+  }
+  // The same elements, but the first replaced with first
+  Seq<T> withFirst(T first){
+    return new Seq<>(List.of(first), 0, from + 1 < base.size() ? new Seq<>(base, from + 1, next) : next);
+  }
+  // These elements followed by those of tail
+  Seq<T> then(Seq<T> tail){
+    return new Seq<>(base, from, next == null ? tail : next.then(tail));
+  }
+
+  @Override public int size(){ return size; }
+  @Override public T get(int index){
+    Objects.checkIndex(index, size);
+    Seq<T> s= this;
+    while (index >= s.base.size() - s.from){
+      index -= s.base.size() - s.from;
+      s= s.next;
+    }
+    return s.base.get(s.from + index);
+  }
+  @Override public T getFirst(){ return base.get(from); }
+  @Override public Iterator<T> iterator(){
+    return new Iterator<T>(){
+      Seq<T> s= Seq.this;
+      int i= from;
+      @Override public boolean hasNext(){ return s != null; }
+      @Override public T next(){
+        if (s == null){ throw new NoSuchElementException(); }
+        T res= s.base.get(i++);
+        if (i == s.base.size()){ s= s.next; i= s == null ? 0 : s.from; }
+        return res;
+      }
+    };
+  }
+}
@@ -0,0 +1,84 @@
+package robotGame;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.StringJoiner;
+
+/**The cells of the grid holding a fuel barrel, as a bit set.
+ * Cell y*side+x is bit (cell % 64) of words[cell / 64]: the 12x12 board takes three longs.
+ * Testing, adding and removing a barrel are a mask on one word, the number of barrels
+ * is a popcount, and the barrels are visited in cell order by scanning the set bits.
+ * None of these allocate or hash a Point, as a HashSet<Point> did.*/
+final class FuelGrid implements Iterable<Point>{
+  private final int side;
+  private final long[] words;
+
+  /**An empty grid of side x side cells*/
+  FuelGrid(int side){
+    if (side <= 0){ throw new IllegalArgumentException("Grid side must be positive: "+side); }
+    this.side= side;
+    words= new long[(side * side + 63) >>> 6];
+  }
+  /**An empty grid as large as the game board*/
+  FuelGrid(){ this(Point.coordSize); }
+
+  private int cell(Point p){ return p.y() * side + p.x(); }
+
+  boolean contains(Point p){
+    int c= cell(p);
+    return (words[c >>> 6] & (1L << c)) != 0;
+  }
+  /**Adds a barrel on p; false if there already was one*/
+  boolean add(Point p){
+    int c= cell(p);
+    long old= words[c >>> 6];
+    words[c >>> 6]= old | (1L << c);
+    return (old & (1L << c)) == 0;
+  }
+  /**Removes the barrel on p, if any*/
+  void remove(Point p){
+    int c= cell(p);
+    words[c >>> 6] &= ~(1L << c);
+  }
+  int size(){
+    int res= 0;
+    for (long w: words){ res += Long.bitCount(w); }
+    return res;
+  }
+  boolean isEmpty(){
+    for (long w: words){ if (w != 0){ return false; } }
+    return true;
+  }
+
+  /**The first cell holding a barrel from cell from included; -1 if none*/
+  int nextCell(int from){
+    int i= from >>> 6;
+    if (i >= words.length){ return -1; }
+    long w= words[i] & (-1L << from);
+    while (w == 0){
+      if (++i == words.length){ return -1; }
+      w= words[i];
+    }
+    return (i << 6) + Long.numberOfTrailingZeros(w);
+  }
+  /**The point of a cell*/
+  Point point(int cell){ return Point.of(cell % side, cell / side); }
+
+  @Override public Iterator<Point> iterator(){
+    return new Iterator<>(){
+      int next= nextCell(0);
+      @Override public boolean hasNext(){ return next >= 0; }
+      @Override public Point next(){
+        if (next < 0){ throw new NoSuchElementException(); }
+        Point res= point(next);
+        next= nextCell(next + 1);
+        return res;
+      }
+    };
+  }
+  @Override public String toString(){
+    var res= new StringJoiner(", ", "[", "]");
+    for (Point p: this){ res.add(p.toString()); }
+    return res.toString();
+  }
+}
@@ -0,0 +1,105 @@
+package robotGame;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiFunction;
+
+import parser.Budget;
+import parser.Mind;
+import parser.Program;
+
+/**A whole game between two programs, run headless: no window, no timer, no images.
+ * The turns are the same as in the Swing game, where the WorldComponent calls
+ * nextTurn until gameStatus reports a dead robot. Here they run back to back,
+ * so a match takes as long as the simulation, not as long as the animation.
+ * A match is deterministic: the same programs always give the same Result.
+ * A program that fails, for example dividing by zero, loses the match
+ * (a draw if both fail on the same turn), instead of aborting it.*/
+public final class Match{
+  private Match(){}
+
+  /**Turns after which a match with both robots alive is a draw*/
+  public static final int defaultMaxTurns= 10_000;
+  private static final int checkEvery= 64;
+
+  public enum Winner{ Red, Blue, Draw }
+
+  /**How a match ended, and the fuel of each robot after every turn*/
+  public record Result(Winner winner, int turns, int[] redFuel, int[] blueFuel){
+    @Override public String toString(){ return "Result["+winner+", "+turns+" turns]"; }
+  }
+
+  /**Runs red against blue, metered with the default Budget, for at most defaultMaxTurns*/
+  public static Result run(Program red, Program blue){
+    return run(red, blue, Program::metered, defaultMaxTurns);
+  }
+  /**Runs red against blue with the given engine (see World), for at most maxTurns*/
+  public static Result run(Program red, Program blue, BiFunction<Program,Budget,Mind> engine, int maxTurns){
+    return run(red, blue, engine, maxTurns, 0);
+  }
+  /**As above, in a World where the barrels appear as decided by the seed*/
+  public static Result run(Program red, Program blue, BiFunction<Program,Budget,Mind> engine, int maxTurns, long seed){
+    return run(red, blue, engine, maxTurns, seed, null);
+  }
+  /**As above, but a match still going after timeLimit (null for none) ends as a draw.
+   * The time and the interrupt flag are checked every checkEvery turns:
+   * an interrupted match throws CancellationException.
+   * The time is wall clock time from the call: a match only ends on time the same way
+   * on every run if it does not wait for a CPU meanwhile (see MatchScope)*/
+  public static Result run(Program red, Program blue, BiFunction<Program,Budget,Mind> engine, int maxTurns, long seed, Duration timeLimit){
+    if (maxTurns < 0){ throw new IllegalArgumentException("Negative maxTurns: "+maxTurns); }
+    long start= System.nanoTime();
+    long limit= timeLimit == null ? Long.MAX_VALUE : timeLimit.toNanos();
+    var current= Thread.currentThread();
+    var minds= new ArrayList<Guarded>(2);//red first, as World applies the engine
+    var world= new World(red, blue, (p, budget)->{
+      var res= new Guarded(engine.apply(p, budget));
+      minds.add(res);
+      return res;
+    }, seed);
+    Guarded redMind= minds.get(0), blueMind= minds.get(1);
+    int[] redFuel= new int[Math.min(maxTurns, 256)];
+    int[] blueFuel= new int[redFuel.length];
+    int turns= 0;
+    while (turns < maxTurns && world.gameStatus().isEmpty()){
+      if (turns % checkEvery == 0){
+        if (current.isInterrupted()){ throw new CancellationException("Match interrupted at turn "+turns); }
+        if (System.nanoTime() - start >= limit){ break; }
+      }
+      world.nextTurn();
+      if (turns == redFuel.length){
+        redFuel=  Arrays.copyOf(redFuel,  Math.min(maxTurns, turns * 2));
+        blueFuel= Arrays.copyOf(blueFuel, redFuel.length);
+      }
+      redFuel[turns]=  fuelAfter(world.red());
+      blueFuel[turns]= fuelAfter(world.blue());
+      turns++;
+      if (redMind.failed || blueMind.failed){ break; }
+    }
+    Winner winner= redMind.failed || blueMind.failed
+      ? winner(redMind.failed, blueMind.failed)
+      : winner(world.red().isDead(), world.blue().isDead());
+    return new Result(winner, turns,
+      Arrays.copyOf(redFuel, turns), Arrays.copyOf(blueFuel, turns));
+  }
+  //the fuel the robot has once the turn is committed, as drawn at the end of the animation
+  private static int fuelAfter(RobotBody r){ return Math.max(0, r.targetFuel - r.stolenFuel); }
+  private static Winner winner(boolean redLost, boolean blueLost){
+    if (redLost == blueLost){ return Winner.Draw; }
+    return redLost ? Winner.Blue : Winner.Red;
+  }
+  // A Mind that stops, and remembers it failed, when the program throws
+  private static final class Guarded implements Mind{
+    private Mind inner;
+    boolean failed;
+    Guarded(Mind inner){ this.inner= inner; }
+    @Override public Mind execute(OuterWorld w){
+      if (failed){ return this; }
+      try { inner= inner.execute(w); }
+      catch (RuntimeException e){ failed= true; }
+      return this;
+    }
+  }
+}
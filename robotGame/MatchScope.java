@@ -0,0 +1,93 @@
+package robotGame;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import parser.Program;
+
+/**Runs each forked Match on its own virtual thread, in the style of a structured task scope:
+ * the matches are forked, their results taken in order of completion with next,
+ * the ones still running cancelled with shutdown, and close waits for all the threads.
+ * Use it in a try-with-resources, so no match outlives the scope.
+ * Every match has its own time limit, after which it ends as a draw (see Match.run).
+ * At most parallelism matches run at once, one per core by default: the others wait
+ * for a slot, blocked at no cost on their virtual thread, and their clock only starts
+ * once they hold one. A match is thus timed on a CPU of its own, not while it waits
+ * for one, and the matches that end on time do not depend on how many were forked.
+ *
+ * Java 21 only has StructuredTaskScope as a preview API, so this is built on
+ * a virtual thread per task executor. It is meant to be used by a single owner thread.*/
+public final class MatchScope implements AutoCloseable{
+  private final ExecutorService threads= Executors.newVirtualThreadPerTaskExecutor();
+  private final BlockingQueue<Future<Match.Result>> completed= new LinkedBlockingQueue<>();
+  private final int maxTurns;
+  private final Duration timeLimit;
+  private final Semaphore running;
+  private int pending;
+
+  /**Matches of at most maxTurns turns and timeLimit each, one running per available processor*/
+  public MatchScope(int maxTurns, Duration timeLimit){
+    this(maxTurns, timeLimit, Runtime.getRuntime().availableProcessors());
+  }
+  /**Matches of at most maxTurns turns and timeLimit each, at most parallelism running at once*/
+  public MatchScope(int maxTurns, Duration timeLimit, int parallelism){
+    if (maxTurns < 0){ throw new IllegalArgumentException("Negative maxTurns: "+maxTurns); }
+    if (timeLimit.isNegative()){ throw new IllegalArgumentException("Negative timeLimit: "+timeLimit); }
+    if (parallelism < 1){ throw new IllegalArgumentException("Parallelism must be positive: "+parallelism); }
+    this.maxTurns= maxTurns;
+    this.timeLimit= timeLimit;
+    running= new Semaphore(parallelism);
+  }
+
+  /**Starts red against blue in the World of the given seed, on a new virtual thread.
+   * @throws java.util.concurrent.RejectedExecutionException after shutdown*/
+  public Future<Match.Result> fork(Program red, Program blue, long seed){
+    var task= new FutureTask<>(()->play(red, blue, seed)){
+      @Override protected void done(){ completed.add(this); }
+    };
+    threads.execute(task);
+    pending++;
+    return task;
+  }
+
+  // Runs on the virtual thread of the match; the clock of the match starts once it holds a slot
+  private Match.Result play(Program red, Program blue, long seed) throws InterruptedException{
+    running.acquire();
+    try { return Match.run(red, blue, Program::metered, maxTurns, seed, timeLimit); }
+    finally { running.release(); }
+  }
+
+  /**Waits for the next forked match to complete, in any order.
+   * @return the completed (or failed, or cancelled) match; null if none is pending*/
+  public Future<Match.Result> next() throws InterruptedException{
+    if (pending == 0){ return null; }
+    pending--;
+    return completed.take();
+  }
+
+  /**Cancels the matches not done yet: the running ones stop at their next check,
+   * the waiting ones stop waiting, and all complete exceptionally. No more matches can be forked*/
+  public void shutdown(){ threads.shutdownNow(); }
+
+  public boolean isShutdown(){ return threads.isShutdown(); }
+
+  /**Shuts down, and waits for all the match threads to end*/
+  @Override public void close(){
+    shutdown();
+    boolean interrupted= false;
+    while (true){
+      try {
+        if (threads.awaitTermination(1, TimeUnit.DAYS)){ break; }
+      }
+      catch (InterruptedException ie){ interrupted= true; }
+    }
+    if (interrupted){ Thread.currentThread().interrupt(); }
+  }
+}
@@ -0,0 +1,54 @@
+package robotGame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**The variables of one robot mind, kept across turns.
+ * Every variable lives in an int frame, indexed by the slot the parser gave it:
+ * reads and writes by slot do not hash nor box, and slots never written read as 0.
+ * Each slot access also carries the name of the variable, so the memory learns
+ * which slot holds which name, and reads and writes by name reach the same frame.
+ * A name only ever accessed by name has no slot yet: its value waits in a map,
+ * and moves to the frame when the program first uses the name with its slot.*/
+final class Memory{
+  private int[] frame= new int[8];
+  private String[] names= new String[8];//the name of each slot, once known
+  private final Map<String,Integer> slots= new HashMap<>();
+  private final Map<String,Integer> unslotted= new HashMap<>();
+
+  int read(int slot, String name){
+    bind(slot, name);
+    return frame[slot];
+  }
+  void write(int slot, String name, int value){
+    bind(slot, name);
+    frame[slot]= value;
+  }
+  /**The value of the variable; null if the program never used it and it was never written*/
+  Integer read(String name){
+    Integer slot= slots.get(name);
+    if (slot == null){ return unslotted.get(name); }
+    return frame[slot];
+  }
+  void write(String name, int value){
+    Integer slot= slots.get(name);
+    if (slot != null){ frame[slot]= value; }
+    else { unslotted.put(name, value); }
+  }
+
+  // Makes sure the slot exists and is known to hold name; only the first access does any work
+  private void bind(int slot, String name){
+    if (slot < names.length && names[slot] == name){ return; }
+    if (slot >= frame.length){
+      int size= Math.max(slot + 1, frame.length * 2);
+      frame= Arrays.copyOf(frame, size);
+      names= Arrays.copyOf(names, size);
+    }
+    if (name == null || name.equals(names[slot])){ return; }
+    names[slot]= name;
+    slots.put(name, slot);
+    Integer value= unslotted.remove(name);
+    if (value != null){ frame[slot]= value; }
+  }
+}
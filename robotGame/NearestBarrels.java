@@ -0,0 +1,77 @@
+package robotGame;
+
+/**The fuel barrels as seen by one robot during one turn, nearest first.
+ * Nothing is computed until the first barrel is requested. Then the distances
+ * go in a binary min heap, and barrels are popped from it only up to the
+ * requested index: the k nearest cost O(n + k log n) instead of a full sort.
+ * Ties go by cell order: first by y, then by x.
+ * An instance is reused every turn by the same robot, so that the arrays
+ * are only allocated when the number of barrels grows.*/
+final class NearestBarrels{
+  private FuelGrid fuel;
+  private Point pos;
+  private boolean started;
+  private Point[] points= new Point[16];//in cell order
+  //heap[0..heapSize) is the min heap of (distance << 32 | position in points);
+  //heap[heapSize..n) are the popped ones, the nearest at n-1
+  private long[] heap= new long[16];
+  private int n;
+  private int heapSize;
+
+  /**Starts a new turn; the fuel set must not change until the turn is over*/
+  void reset(FuelGrid fuel, Point pos){
+    this.fuel= fuel;
+    this.pos= pos;
+    started= false;
+  }
+
+  int size(){ return fuel.size(); }
+
+  /**The index-th nearest barrel; null if there are not so many*/
+  Point get(int index){
+    if (index < 0){ throw new IndexOutOfBoundsException(index); }
+    if (!started){ start(); }
+    if (index >= n){ return null; }
+    while (n - heapSize <= index){ pop(); }
+    return points[(int) heap[n - 1 - index]];
+  }
+
+  private void start(){
+    started= true;
+    n= fuel.size();
+    if (points.length < n){
+      points= new Point[Math.max(n, points.length * 2)];
+      heap= new long[points.length];
+    }
+    int i= 0;
+    for (int c= fuel.nextCell(0); c >= 0; c= fuel.nextCell(c + 1)){
+      Point p= fuel.point(c);
+      points[i]= p;
+      long distance= Math.abs(p.x() - pos.x()) + Math.abs(p.y() - pos.y());
+      heap[i]= distance << 32 | i;
+      i++;
+    }
+    heapSize= n;
+    for (int k= n / 2 - 1; k >= 0; k--){ down(k); }
+  }
+  // Moves the nearest to the end of the heap region, as in heapsort
+  private void pop(){
+    heapSize--;
+    long min= heap[0];
+    heap[0]= heap[heapSize];
+    heap[heapSize]= min;
+    down(0);
+  }
+  private void down(int k){
+    long v= heap[k];
+    while (true){
+      int c= 2 * k + 1;
+      if (c >= heapSize){ break; }
+      if (c + 1 < heapSize && heap[c + 1] < heap[c]){ c++; }
+      if (heap[c] >= v){ break; }
+      heap[k]= heap[c];
+      k= c;
+    }
+    heap[k]= v;
+  }
+}
@@ -17,6 +17,21 @@ public interface OuterWorld{
   /**The robot mind stores a map from string names to int values.
    * This method updates/initializes those values*/
   void setVar(String name, int value);
+
+  /**Fast path for variables the parser resolved to a slot of the program.
+   * Reads the variable in that slot; name is the name of the variable.
+   * Undefined variables read as 0.
+   * By default this reads by name; worlds keeping an int frame avoid
+   * hashing the name and boxing the value*/
+  default int readSlot(int slot, String name){
+    Integer value= readVar(name);
+    return value != null ? value : 0;
+  }
+
+  /**Fast path for variables the parser resolved to a slot of the program.
+   * Updates/initializes the variable in that slot; name is the name of the variable.
+   * By default this writes by name*/
+  default void setSlot(int slot, String name, int value){ setVar(name, value); }
   
   /** Move forward one step. Sets used=true for this turn */
   void doMove();
@@ -3,6 +3,17 @@ package robotGame;
  * Note the invariant checking x and y to be in the valid range */
 public record Point(int x, int y) {
   public static final int coordSize= 12;
+  //every point of the grid, so that moving does not allocate
+  private static final Point[] grid= new Point[coordSize * coordSize];
+  static{
+    for (int i= 0; i < grid.length; i++){ grid[i]= new Point(i % coordSize, i / coordSize); }
+  }
+  
+  /**The shared instance of the point x,y; throws as the constructor does when out of range*/
+  public static Point of(int x, int y){
+    boolean ok= x >= 0  && y >= 0 && x < coordSize && y < coordSize;
+    return ok ? grid[y * coordSize + x] : new Point(x, y);
+  }
   
   public Point{
     boolean ok= x >= 0  && y >= 0 && x < coordSize && y < coordSize;
@@ -13,24 +24,35 @@ public record Point(int x, int y) {
   /**Moves the Point in the required direction, but does not go out of the grid.*/
   Point move(Direction dir){
     return switch (dir) {
-      case North -> new Point(x, inRange(y - 1));
-      case West  -> new Point(inRange(x - 1), y);
-      case South -> new Point(x, inRange(y + 1));
-      case East  -> new Point(inRange(x + 1), y);
+      case North -> of(x, inRange(y - 1));
+      case West  -> of(inRange(x - 1), y);
+      case South -> of(x, inRange(y + 1));
+      case East  -> of(inRange(x + 1), y);
     };
   }
   
   /**Computes the RelativePoint, including an axis rotation of dir*/
   public RelativePoint toRelative(Point p, Direction dir) {
-    int px = p.x();
-    int py = p.y();
+    return new RelativePoint(relativeX(p, dir), relativeY(p, dir));
+  } 
+  /**The x of toRelative, without allocating*/
+  int relativeX(Point p, Direction dir){
     return switch (dir) {
-      case North -> new RelativePoint(x - px, py - y);
-      case South -> new RelativePoint(px - x, y - py);
-      case West ->  new RelativePoint(py - y, px - x);
-      case East ->  new RelativePoint(y - py, x - px);
+      case North -> x - p.x();
+      case South -> p.x() - x;
+      case West ->  p.y() - y;
+      case East ->  y - p.y();
     };
-  } 
+  }
+  /**The y of toRelative, without allocating*/
+  int relativeY(Point p, Direction dir){
+    return switch (dir) {
+      case North -> p.y() - y;
+      case South -> y - p.y();
+      case West ->  p.x() - x;
+      case East ->  x - p.x();
+    };
+  }
 
   public static Error outOfRange(String type, int x, int y, int min, int max) {
     String msg= type + "(x="+x+", y="+y+") outside of range " +
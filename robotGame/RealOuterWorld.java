@@ -5,32 +5,46 @@ import java.util.*;
 /**This is the implementation of OuterWorld.
  * Reading this code can help you to understand the way actions are
  * propagated onto robots, but you will only rely on the behavior of
- * the interface OuterWorld itself.*/
+ * the interface OuterWorld itself.
+ * There is one for each robot, kept for the whole game with its variables
+ * and barrel buffers: reset starts a new turn, allocating nothing.*/
 class RealOuterWorld implements OuterWorld{
   private final RobotBody robot;
   private final RobotBody other;
-  private final RelativePoint relative;
-  private final Map<String,Integer> map;
-  private final List<RelativePoint> barrels;
-  private final Set<Point> availableFuel;
-  private boolean used= false;
+  private final Memory memory= new Memory();
+  private final NearestBarrels barrels= new NearestBarrels();
+  private final FuelGrid availableFuel;
+  private int oppLR;
+  private int oppFB;
+  private boolean used;
+  private boolean tookBarrel;
   
-  public RealOuterWorld(Set<Point> availableFuel, RobotBody robot, RobotBody other,Map<String,Integer> map){
+  RealOuterWorld(FuelGrid availableFuel, RobotBody robot, RobotBody other){
     this.robot= robot;
     this.other= other;
-    this.relative= other.currentPos.toRelative(robot.currentPos,robot.currentDir);
-    this.map= map;
     this.availableFuel= availableFuel;
-    this.barrels= preComputeBarrels();
+    reset();
     }
+
+  /**Starts a new turn, seeing the robots and the fuel as they are now*/
+  RealOuterWorld reset(){
+    used= false;
+    tookBarrel= false;
+    oppLR= other.currentPos.relativeX(robot.currentPos,robot.currentDir);
+    oppFB= other.currentPos.relativeY(robot.currentPos,robot.currentDir);
+    barrels.reset(availableFuel, robot.currentPos);
+    return this;
+  }
   
   @Override public boolean used(){ return used; }
   private void useIt(){
     if(used){ throw new Error("Attempint to use OuterWorld twice"); }
     used= true;
   }
-  @Override public Integer readVar(String name){ return map.get(name); }
-  @Override public void setVar(String name, int value){ map.put(name,value); }
+  @Override public Integer readVar(String name){ return memory.read(name); }
+  @Override public void setVar(String name, int value){ memory.write(name,value); }
+  @Override public int readSlot(int slot, String name){ return memory.read(slot,name); }
+  @Override public void setSlot(int slot, String name, int value){ memory.write(slot,name,value); }
   @Override public void doMove(){
     useIt();
     robot.targetPos = robot.currentPos.move(robot.currentDir);
@@ -49,8 +63,10 @@ class RealOuterWorld implements OuterWorld{
   }
   @Override public void doTakeFuel(){
     useIt();
-    var pointHasFuel= availableFuel.remove(robot.currentPos);
-      if (pointHasFuel){ robot.targetFuel= RobotBody.maxFuel; }
+    //the barrel is removed by World once both robots have thought:
+    //the other robot still sees it during this turn
+    tookBarrel= availableFuel.contains(robot.currentPos);
+      if (tookBarrel){ robot.targetFuel= RobotBody.maxFuel; }
       boolean canTakeFuel= !other.currentShield 
         && robot.currentPos.move(robot.currentDir).equals(other.currentPos);
       if (!canTakeFuel){ return; }
@@ -61,15 +77,19 @@ class RealOuterWorld implements OuterWorld{
   @Override public void doWait(){ useIt();  }
   @Override public void setShield(boolean flag){ robot.targetShield = flag; }    
   @Override public int readFuelLeft(){ return robot.currentFuel; }
-  @Override public int readOppLR(){ return relative.x(); }
-  @Override public int readOppFB(){ return relative.y(); }
+  @Override public int readOppLR(){ return oppLR; }
+  @Override public int readOppFB(){ return oppFB; }
   @Override public int readNumBarrels(){ return barrels.size(); }  
   @Override public int readBarrelLR(int n){
-    return (n >= barrels.size()) ? Integer.MAX_VALUE : barrels.get(n).x();
+    var barrel= barrels.get(n);
+    return barrel == null ? Integer.MAX_VALUE : barrel.relativeX(robot.currentPos, robot.currentDir);
   }
   @Override public int readBarrelFB(int n) {
-    return (n >= barrels.size()) ? Integer.MAX_VALUE : barrels.get(n).y();
+    var barrel= barrels.get(n);
+    return barrel == null ? Integer.MAX_VALUE : barrel.relativeY(robot.currentPos, robot.currentDir);
   }
+  /**Whether this robot took the barrel on its position this turn*/
+  boolean tookBarrel(){ return tookBarrel; }
   @Override public int readWallDist() {
     return switch (robot.currentDir) {
       case North -> robot.currentPos.y();
@@ -78,23 +98,4 @@ class RealOuterWorld implements OuterWorld{
       case East  -> (Point.coordSize-1) - robot.currentPos.x();
     };
   }
-  private List<RelativePoint> preComputeBarrels(){    
-    //Best code for barrels; but uses streams, we will teach about it in SWEN221
-    return availableFuel.stream()
-      .map(p->p.toRelative(robot.currentPos, robot.currentDir))
-      .sorted(Comparator.comparingInt(p -> Math.abs(p.x()) + Math.abs(p.y())))
-      .toList();
-    }
-  //Worst code, equivalent to the above but using only features you know
-  /*List<RelativePoint> barrels = new ArrayList<>();
-  for(Point fuelP: availableFuel){
-    barrels.add(fuelP.toRelative(robot.currentPos, robot.currentDir));
-    }
-  Collections.sort(barrels, (p1, p2)->{
-    int d1 = Math.abs(p1.x()) + Math.abs(p1.y());
-    int d2 = Math.abs(p2.x()) + Math.abs(p2.y());
-    return d1 - d2;
-  });
-  return barrels;
-  }*/
 }
\ No newline at end of file
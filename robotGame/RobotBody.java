@@ -78,11 +78,4 @@ public class RobotBody {
   }
   boolean isMoving(){ return !currentPos.equals(targetPos); }
   boolean isMovingOrRotating(){ return isMoving() || !currentDir.equals(targetDir); }
-  public GameImage imgAtTime(double time){
-    int animationSlowDownFactor= 10;
-    boolean evenAnimation= ((int) (time * animationSlowDownFactor)) % 2 == 0;
-    GameImage image1= color == Colour.Blue ? GameImage.RobotBlue1 : GameImage.RobotRed1;
-    GameImage image2= color == Colour.Blue ? GameImage.RobotBlue2 : GameImage.RobotRed2;
-    return evenAnimation && isMovingOrRotating() ? image1 : image2;
-  }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package robotGame;
+
+/**A SensorFrame wraps the OuterWorld of one robot for one turn,
+ * and answers repeated sensor reads from the first read.
+ * The world does not change while a robot thinks: the actions only take
+ * effect once the turn is committed, and a robot stops reading after its action.
+ * Thus reading a sensor twice in a turn always gives the same value.
+ *
+ * This is opt-in: it changes how many times the wrapped world is read,
+ * not what the program sees. A frame is reused across turns with reset,
+ * and counts the sensor reads it received and how many it saved.*/
+public final class SensorFrame implements OuterWorld{
+  /**Barrel indexes below this are cached; larger ones are always read*/
+  public static final int cachedBarrels= 8;
+
+  private static final int fuelLeft= 1, oppLR= 2, oppFB= 4, numBarrels= 8, wallDist= 16;
+  private OuterWorld w;
+  private int known;//bit set of the cached sensors
+  private int fuelLeftValue, oppLRValue, oppFBValue, numBarrelsValue, wallDistValue;
+  private int knownLR, knownFB;//bit sets of the cached barrel indexes
+  private final int[] barrelLR= new int[cachedBarrels];
+  private final int[] barrelFB= new int[cachedBarrels];
+  private long reads;
+  private long saved;
+
+  /**A frame over the given world; the cache starts empty*/
+  public SensorFrame(OuterWorld w){ reset(w); }
+
+  /**Starts a new turn on the given world: the cache is emptied, the counters are kept*/
+  public SensorFrame reset(OuterWorld w){
+    this.w= w;
+    known= 0;
+    knownLR= 0;
+    knownFB= 0;
+    return this;
+  }
+
+  /**Sensor reads received since the frame was created*/
+  public long reads(){ return reads; }
+
+  /**Sensor reads answered from the cache, without reading the wrapped world*/
+  public long saved(){ return saved; }
+
+  private boolean cached(int sensor){
+    reads++;
+    if ((known & sensor) == 0){ known |= sensor; return false; }
+    saved++;
+    return true;
+  }
+  @Override public int readFuelLeft(){
+    if (!cached(fuelLeft)){ fuelLeftValue= w.readFuelLeft(); }
+    return fuelLeftValue;
+  }
+  @Override public int readOppLR(){
+    if (!cached(oppLR)){ oppLRValue= w.readOppLR(); }
+    return oppLRValue;
+  }
+  @Override public int readOppFB(){
+    if (!cached(oppFB)){ oppFBValue= w.readOppFB(); }
+    return oppFBValue;
+  }
+  @Override public int readNumBarrels(){
+    if (!cached(numBarrels)){ numBarrelsValue= w.readNumBarrels(); }
+    return numBarrelsValue;
+  }
+  @Override public int readWallDist(){
+    if (!cached(wallDist)){ wallDistValue= w.readWallDist(); }
+    return wallDistValue;
+  }
+  @Override public int readBarrelLR(int index){
+    reads++;
+    if (index < 0 || index >= cachedBarrels){ return w.readBarrelLR(index); }
+    int bit= 1 << index;
+    if ((knownLR & bit) != 0){ saved++; return barrelLR[index]; }
+    knownLR |= bit;
+    return barrelLR[index]= w.readBarrelLR(index);
+  }
+  @Override public int readBarrelFB(int index){
+    reads++;
+    if (index < 0 || index >= cachedBarrels){ return w.readBarrelFB(index); }
+    int bit= 1 << index;
+    if ((knownFB & bit) != 0){ saved++; return barrelFB[index]; }
+    knownFB |= bit;
+    return barrelFB[index]= w.readBarrelFB(index);
+  }
+
+  //everything else goes to the wrapped world
+  @Override public boolean used(){ return w.used(); }
+  @Override public Integer readVar(String name){ return w.readVar(name); }
+  @Override public void setVar(String name, int value){ w.setVar(name, value); }
+  @Override public int readSlot(int slot, String name){ return w.readSlot(slot, name); }
+  @Override public void setSlot(int slot, String name, int value){ w.setSlot(slot, name, value); }
+  @Override public void doMove(){ w.doMove(); }
+  @Override public void doTurnL(){ w.doTurnL(); }
+  @Override public void doTurnR(){ w.doTurnR(); }
+  @Override public void doTurnAround(){ w.doTurnAround(); }
+  @Override public void doTakeFuel(){ w.doTakeFuel(); }
+  @Override public void doWait(){ w.doWait(); }
+  @Override public void setShield(boolean flag){ w.setShield(flag); }
+}
@@ -0,0 +1,214 @@
+package robotGame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import parser.Program;
+
+/**A round robin tournament: every program plays every other program,
+ * once as red and once as blue, in a World for each of the seeds.
+ * The seeds are drawn from a SplittableRandom seeded with the root seed:
+ * any match can be replayed alone with Match.run and seed(k).
+ * The matches are independent headless Matches, so they are split over a
+ * work stealing ForkJoinPool: idle workers steal ranges of matches from busy ones,
+ * and long matches do not leave the other cores waiting.
+ * The results go in LongAdder counters, striped over the threads:
+ * workers finishing matches at the same time do not contend on a shared count.
+ * Alternatively, run(Duration) plays each match on its own virtual thread with a time limit,
+ * and stops as soon as the winner of the tournament is known.
+ * Each run plays the whole tournament again from empty standings; do not run
+ * the same Tournament from two threads at once.*/
+public final class Tournament{
+  /**A competing program, named after its file*/
+  public record Entry(String name, Program program){}
+
+  /**The results of one entry so far; the counters are updated concurrently*/
+  public static final class Standing{
+    private final String name;
+    private final LongAdder wins= new LongAdder();
+    private final LongAdder draws= new LongAdder();
+    private final LongAdder losses= new LongAdder();
+    private final LongAdder turns= new LongAdder();
+    Standing(String name){ this.name= name; }
+    public String name(){ return name; }
+    public long wins(){ return wins.sum(); }
+    public long draws(){ return draws.sum(); }
+    public long losses(){ return losses.sum(); }
+    public long matches(){ return wins() + draws() + losses(); }
+    /**Mean number of turns of the matches played; 0 if none*/
+    public double meanTurns(){
+      long m= matches();
+      return m == 0 ? 0 : (double) turns.sum() / m;
+    }
+    /**3 points for a win, 1 for a draw*/
+    public long points(){ return 3 * wins() + draws(); }
+    @Override public String toString(){
+      return name+": "+wins()+" won, "+draws()+" drawn, "+losses()+" lost, "
+        +String.format("%.1f", meanTurns())+" turns on average";
+    }
+  }
+
+  //matches per forked task: a match is thousands of turns, so a few are enough to hide the forking cost
+  private static final int matchesPerTask= 4;
+  private final List<Entry> entries;
+  private Standing[] standings;//of the last run
+  private final int seeds;
+  private final long[] seedValues;
+  private final int maxTurns;
+
+  /**As below, with root seed 0*/
+  public Tournament(List<Entry> entries, int seeds, int maxTurns){ this(entries, seeds, maxTurns, 0); }
+  /**Each ordered pair of distinct entries plays a match for each of the seeds
+   * drawn from rootSeed*/
+  public Tournament(List<Entry> entries, int seeds, int maxTurns, long rootSeed){
+    if (entries.size() < 2){ throw new IllegalArgumentException("A tournament needs at least two programs"); }
+    if (seeds < 1){ throw new IllegalArgumentException("Seeds must be positive: "+seeds); }
+    if (maxTurns < 0){ throw new IllegalArgumentException("Negative maxTurns: "+maxTurns); }
+    this.entries= List.copyOf(entries);
+    this.seeds= seeds;
+    seedValues= new SplittableRandom(rootSeed).longs(seeds).toArray();
+    this.maxTurns= maxTurns;
+    standings= newStandings();
+  }
+
+  /**The .prog files in the directory, in name order.
+   * @throws parser.ParserFailureException if a file does not contain a valid program*/
+  public static List<Entry> load(Path directory){
+    List<Path> files;
+    try (var s= Files.list(directory)){
+      files= s.filter(p->p.toString().endsWith(".prog")).sorted().toList();
+    }
+    catch (IOException ieo){ throw new UncheckedIOException(ieo); }
+    var res= new ArrayList<Entry>(files.size());
+    for (Path f: files){ res.add(new Entry(f.getFileName().toString(), World.load(f))); }
+    return res;
+  }
+
+  /**The k-th seed: the World of the matches of every pairing for this seed*/
+  public long seed(int k){ return seedValues[k]; }
+
+  /**Number of matches the tournament plays*/
+  public long matches(){ return (long) entries.size() * (entries.size() - 1) * seeds; }
+
+  /**Plays all the matches on the common pool*/
+  public List<Standing> run(){ return run(ForkJoinPool.commonPool()); }
+
+  /**Plays all the matches on the given pool.
+   * @return the standings, most points first*/
+  public List<Standing> run(ForkJoinPool pool){
+    standings= newStandings();
+    pool.invoke(new Matches(0, matches()));
+    return ranking();
+  }
+
+  /**Plays the matches each on its own virtual thread (see MatchScope), each within timeLimit,
+   * as many at once as there are processors.
+   * As soon as the first place is decided, that is no other entry could reach the points
+   * of the leader even winning all its remaining matches, the remaining matches are cancelled.
+   * Cancelled matches are not counted in the standings.
+   * @return the standings, most points first*/
+  public List<Standing> run(Duration timeLimit) throws InterruptedException{
+    if (matches() > Integer.MAX_VALUE){ throw new IllegalArgumentException("Too many matches: "+matches()); }
+    int n= (int) matches();
+    var forked= new HashMap<Future<Match.Result>,Integer>();
+    var remaining= new int[entries.size()];//matches not yet recorded, per entry
+    standings= newStandings();
+    try (var scope= new MatchScope(maxTurns, timeLimit)){
+      for (int i= 0; i < n; i++){
+        int red= red(i), blue= blue(i);
+        forked.put(scope.fork(entries.get(red).program(), entries.get(blue).program(), seedOf(i)), i);
+        remaining[red]++;
+        remaining[blue]++;
+      }
+      for (var f= scope.next(); f != null; f= scope.next()){
+        int i= forked.get(f), red= red(i), blue= blue(i);
+        record(red, blue, result(f));
+        remaining[red]--;
+        remaining[blue]--;
+        if (decided(remaining)){ break; }
+      }
+    }
+    return ranking();
+  }
+  // A failing program only loses its match (see Match): a failed future is a bug of the simulation
+  private static Match.Result result(Future<Match.Result> f){
+    try { return f.get(); }
+    catch (ExecutionException | InterruptedException e){ throw new IllegalStateException("Match failed", e); }
+  }
+  // Whether no entry can catch up with the leader any more
+  private boolean decided(int[] remaining){
+    long best= -1;
+    int leader= -1;
+    for (int e= 0; e < standings.length; e++){
+      if (standings[e].points() > best){ best= standings[e].points(); leader= e; }
+    }
+    for (int e= 0; e < standings.length; e++){
+      if (e != leader && standings[e].points() + 3L * remaining[e] >= best){ return false; }
+    }
+    return true;
+  }
+
+  // Each run starts from empty standings: the Standings returned by a previous run are kept as they are
+  private Standing[] newStandings(){
+    return entries.stream().map(e->new Standing(e.name())).toArray(Standing[]::new);
+  }
+
+  /**The standings of the last run so far, most points first; ties keep the entries order*/
+  public List<Standing> ranking(){
+    var res= new ArrayList<>(List.of(standings));
+    res.sort(Comparator.comparingLong(Standing::points).reversed());
+    return res;
+  }
+
+  // Match i: the seed varies fastest, then blue, then red
+  private long seedOf(long i){ return seedValues[(int) (i % seeds)]; }
+  private int red(long i){ return (int) (i / seeds / (entries.size() - 1)); }
+  private int blue(long i){
+    int res= (int) (i / seeds % (entries.size() - 1));
+    return res >= red(i) ? res + 1 : res;//skips red playing itself
+  }
+  private void play(long i){
+    int red= red(i), blue= blue(i);
+    var res= Match.run(entries.get(red).program(), entries.get(blue).program(),
+      Program::metered, maxTurns, seedOf(i));
+    record(red, blue, res);
+  }
+  private void record(int red, int blue, Match.Result res){
+    record(standings[red],  res, Match.Winner.Red);
+    record(standings[blue], res, Match.Winner.Blue);
+  }
+  private static void record(Standing s, Match.Result res, Match.Winner me){
+    if (res.winner() == me){ s.wins.increment(); }
+    else if (res.winner() == Match.Winner.Draw){ s.draws.increment(); }
+    else { s.losses.increment(); }
+    s.turns.add(res.turns());
+  }
+
+  // Plays the matches [from, to), halving the range until it is small
+  @SuppressWarnings("serial")
+  private final class Matches extends RecursiveAction{
+    private final long from, to;
+    Matches(long from, long to){ this.from= from; this.to= to; }
+    @Override protected void compute(){
+      if (to - from <= matchesPerTask){
+        for (long i= from; i < to; i++){ play(i); }
+        return;
+      }
+      long mid= (from + to) >>> 1;
+      invokeAll(new Matches(from, mid), new Matches(mid, to));
+    }
+  }
+}
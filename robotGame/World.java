@@ -1,53 +1,107 @@
 package robotGame;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Arc2D;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.random.RandomGenerator;
 
+import parser.Budget;
 import parser.ExamplePrograms;
+import parser.Mind;
 import parser.Program;
+import parser.ProgramCache;
 import robotGame.RobotBody.Colour;
 
-/** Simulation of the robots in their world */
+/** Simulation of the robots in their world.
+ * It does not draw itself (see WorldPainter): it runs without AWT, as in Match */
 public class World {
-  private final Set<Point> availableFuel= new HashSet<>();
-  private final Random rand = new Random(0);
+  private final FuelGrid availableFuel= new FuelGrid();
+  private final RandomGenerator rand;//one per world, never shared: no contention between matches
   
   private final RobotBody red;
-  private Program redProgram;
+  private Mind redProgram;
   private final RobotBody blue;
   
-  private final Map<String,Integer> redMap= new HashMap<>();
-  private Program blueProgram;
-  private final Map<String,Integer> blueMap= new HashMap<>();
+  private Mind blueProgram;
+  //what each robot sees, reused every turn
+  private final RealOuterWorld redView;
+  private final RealOuterWorld blueView;
+  //statements each robot can execute per turn, and how often they ran out
+  private final Budget redBudget= new Budget();
+  private final Budget blueBudget= new Budget();
+
+  //null unless cacheSensors was called
+  private SensorFrame redSensors;
+  private SensorFrame blueSensors;
   
+  //Parsed programs are shared by every World loading the same unchanged file
+  static final ProgramCache programs= new ProgramCache(256);
   static Program load(Path code){
     if( code == null) { return ExamplePrograms.defaultProgramCode(); }
-    return new parser.Parser(code).parse();
+    return programs.get(code);
+  }
+  World(Path redCode, Path blueCode){ this(redCode, blueCode, Program::metered); }
+  /**The engine turns each loaded Program into the Mind that runs it within the
+   * per-turn Budget of the robot, for example Program::metered, Interpreter::new,
+   * Machine::of or (p,b)->CompiledProgram.metered(p).apply(b).
+   * Engines ignoring the budget, like (p,b)->Machine.of(p), can spin forever on a turn.
+   * With an engine that does not allocate, like Interpreter::new, nextTurn allocates
+   * nothing once warmed up*/
+  public World(Path redCode, Path blueCode, BiFunction<Program,Budget,Mind> engine){
+    this(load(redCode), load(blueCode), engine);
   }
-  World(Path redCode, Path blueCode){
-    redProgram=  load(redCode);
-    blueProgram= load(blueCode);
-    var redStart=  new Point(0,0);
-    var blueStart= new Point(Point.coordSize - 1, Point.coordSize - 1);
+  /**A world running the given programs, as the Path constructor does.
+   * The engine is applied to the red program first, then to the blue one*/
+  public World(Program redCode, Program blueCode, BiFunction<Program,Budget,Mind> engine){
+    this(redCode, blueCode, engine, 0);
+  }
+  /**The seed decides where and when the barrels appear; the Swing game uses seed 0.
+   * The barrels come from a SplittableRandom: the same programs and seed give
+   * the same match on any thread, JVM or machine*/
+  public World(Program redCode, Program blueCode, BiFunction<Program,Budget,Mind> engine, long seed){
+    rand= new SplittableRandom(seed);
+    redProgram=  engine.apply(redCode, redBudget);
+    blueProgram= engine.apply(blueCode, blueBudget);
+    var redStart=  Point.of(0,0);
+    var blueStart= Point.of(Point.coordSize - 1, Point.coordSize - 1);
     red=  new RobotBody(Colour.Red,  redStart,Direction.South);
     blue= new RobotBody(Colour.Blue, blueStart, Direction.North);
+    redView=  new RealOuterWorld(availableFuel,red,blue);
+    blueView= new RealOuterWorld(availableFuel,blue,red);
     addFuel(); addFuel(); //add some initial fuel
   }
+  Budget redBudget(){ return redBudget; }
+  Budget blueBudget(){ return blueBudget; }
+  RobotBody red(){ return red; }
+  RobotBody blue(){ return blue; }
+  FuelGrid fuel(){ return availableFuel; }
+  /**From now on, each robot reads its sensors through a SensorFrame:
+   * repeated reads within a turn do not recompute the value.
+   * The programs behave the same; only the number of reads of RealOuterWorld changes*/
+  void cacheSensors(){
+    if (redSensors != null){ return; }
+    redSensors= new SensorFrame(null);
+    blueSensors= new SensorFrame(null);
+  }
+  /**Sensor reads made by both robots since cacheSensors was called*/
+  long sensorReads(){ return redSensors == null ? 0 : redSensors.reads() + blueSensors.reads(); }
+  /**Sensor reads answered by the SensorFrames instead of RealOuterWorld*/
+  long sensorReadsSaved(){ return redSensors == null ? 0 : redSensors.saved() + blueSensors.saved(); }
   /**crucially, order of turn must be not relevant. Thus we divide think and act.*/ 
   public void nextTurn(){
     //commit last operation
     red.commitAction();
     blue.commitAction();
     //think
-    var redWorld= new RealOuterWorld(availableFuel,red,blue,redMap);
-    var blueWorld= new RealOuterWorld(availableFuel,blue,red,blueMap);
-    redProgram = redProgram.execute(redWorld);//Question: what would happen if we swap this line with the above one? 
+    redView.reset();
+    blueView.reset();
+    OuterWorld redWorld= redSensors == null ? redView : redSensors.reset(redView);
+    OuterWorld blueWorld= blueSensors == null ? blueView : blueSensors.reset(blueView);
+    redProgram = redProgram.execute(redWorld);//Question: what would happen if the barrels were removed right away?
     blueProgram = blueProgram.execute(blueWorld);//Answer: the blueWorld may see one barrel less, making behavior order dependent.
+    //the barrels are only read lazily, so the taken ones are removed once both robots have thought
+    if (redView.tookBarrel()){ availableFuel.remove(red.currentPos); }
+    if (blueView.tookBarrel()){ availableFuel.remove(blue.currentPos); }
     //resolve movement conflicts
     setNextPos(red);
     setNextPos(blue);
@@ -68,35 +122,7 @@ public class World {
   private void addFuel(){
     int x= rand.nextInt(Point.coordSize);
     int y= rand.nextInt(Point.coordSize);
-    availableFuel.add(new Point(x, y));
-  }
-  //Code below could be decomposed better using SWEN221/SWEN225 techniques
-  //It is kind of sad to have a Graphics2D inside 'World' since it should not have
-  //rendering responsibilities.
-  void drawMap(Graphics2D g, double time){
-    for (Point fuel : availableFuel){ GameImage.Fuel.draw(g, fuel.x(),fuel.y()); }
-    drawRobot(g, time, red);
-    drawRobot(g, time, blue);
-  }
-  void drawRobot(Graphics2D g, double time, RobotBody r){
-    double xGrid= r.xAtTime(time);
-    double yGrid= r.yAtTime(time);
-    double x = xGrid * WorldComponent.gridSize + WorldComponent.gridSize / 2d;
-    double y = yGrid * WorldComponent.gridSize + WorldComponent.gridSize / 2d;
-    double angle = r.angleAtTime(time);
-    AffineTransform trans= new AffineTransform();
-    trans.translate(x, y);
-    trans.rotate(angle);
-    r.imgAtTime(time).draw(g,trans);
-    if (r.currentShield){ GameImage.ShieldImage.draw(g, xGrid, yGrid); } 
-    drawFuel(g, x, y, r.fuelAtTime(time));
-  }
-  private void drawFuel(Graphics2D g, double x, double y, double fuelCurrent){
-    fuelCurrent= Math.max(0, fuelCurrent);
-    Arc2D fuelArc = new Arc2D.Double(x - 10, y - 10, 20, 20, -90, 360d * fuelCurrent / 100d, Arc2D.OPEN);
-    g.setStroke(new BasicStroke(3));
-    g.setColor(Color.GREEN);
-    g.draw(fuelArc);
+    availableFuel.add(Point.of(x, y));
   }
   public String gameStatus(){//could be Optional<String> with SWEN221
     if (!red.isDead()  && !blue.isDead()){ return ""; }
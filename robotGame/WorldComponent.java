@@ -61,7 +61,7 @@ class WorldComponent extends JComponent{
       g.draw(new Line2D.Double(0, i * gridSize, gridTot, i * gridSize));
       g.draw(new Line2D.Double(i * gridSize, 0, i * gridSize, gridTot));
     }
-    if (world != null){ world.drawMap(g,getTimeRatio()); }
+    if (world != null){ WorldPainter.drawMap(world, g, getTimeRatio()); }
   }
   //what fraction of the current "frame" are we at
   //(a frame lasts WORLD_UPDATE_DELAY ticks)
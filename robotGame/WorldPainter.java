@@ -0,0 +1,49 @@
+package robotGame;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+
+import robotGame.RobotBody.Colour;
+
+/**Draws a World in the middle of a turn.
+ * Drawing lives here, and not in World, so that a World can be simulated
+ * without any AWT class and without the image assets (see Match).*/
+final class WorldPainter{
+  private WorldPainter(){}
+
+  static void drawMap(World world, Graphics2D g, double time){
+    for (Point fuel : world.fuel()){ GameImage.Fuel.draw(g, fuel.x(),fuel.y()); }
+    drawRobot(g, time, world.red());
+    drawRobot(g, time, world.blue());
+  }
+  static void drawRobot(Graphics2D g, double time, RobotBody r){
+    double xGrid= r.xAtTime(time);
+    double yGrid= r.yAtTime(time);
+    double x = xGrid * WorldComponent.gridSize + WorldComponent.gridSize / 2d;
+    double y = yGrid * WorldComponent.gridSize + WorldComponent.gridSize / 2d;
+    double angle = r.angleAtTime(time);
+    AffineTransform trans= new AffineTransform();
+    trans.translate(x, y);
+    trans.rotate(angle);
+    imgAtTime(r, time).draw(g,trans);
+    if (r.currentShield){ GameImage.ShieldImage.draw(g, xGrid, yGrid); } 
+    drawFuel(g, x, y, r.fuelAtTime(time));
+  }
+  private static void drawFuel(Graphics2D g, double x, double y, double fuelCurrent){
+    fuelCurrent= Math.max(0, fuelCurrent);
+    Arc2D fuelArc = new Arc2D.Double(x - 10, y - 10, 20, 20, -90, 360d * fuelCurrent / 100d, Arc2D.OPEN);
+    g.setStroke(new BasicStroke(3));
+    g.setColor(Color.GREEN);
+    g.draw(fuelArc);
+  }
+  static GameImage imgAtTime(RobotBody r, double time){
+    int animationSlowDownFactor= 10;
+    boolean evenAnimation= ((int) (time * animationSlowDownFactor)) % 2 == 0;
+    GameImage image1= r.color == Colour.Blue ? GameImage.RobotBlue1 : GameImage.RobotRed1;
+    GameImage image2= r.color == Colour.Blue ? GameImage.RobotBlue2 : GameImage.RobotRed2;
+    return evenAnimation && r.isMovingOrRotating() ? image1 : image2;
+  }
+}
@@ -0,0 +1,229 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import parser.Interpreter;
+import parser.Mind;
+import parser.Parser;
+import parser.Program;
+import robotGame.Match;
+import robotGame.MatchScope;
+import robotGame.OuterWorld;
+import robotGame.Tournament;
+import robotGame.World;
+
+class GameTests{
+  //Reads every sensor, so every barrel is visited, but never takes fuel
+  static final String roamer= """
+    loop {
+      if (lt(barrelLR, 0)) { turnL; } elif (gt(barrelFB(1), 3)) { move; } else { turnR; }
+      $d = add(oppLR, sub(oppFB, numBarrels));
+      if (gt(wallDist, fuelLeft)) { move; } else { turnAround; }
+    }""";
+
+  @Test void headlessTurnsDoNotAllocate(){
+    var p= new Parser(roamer).parse();
+    var world= new World(p, p, Interpreter::new);
+    var mx= (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long id= Thread.currentThread().threadId();
+    for (int i= 0; i < 30_000; i++){ world.nextTurn(); }
+    long before= mx.getThreadAllocatedBytes(id);
+    for (int i= 0; i < 100_000; i++){ world.nextTurn(); }
+    long allocated= mx.getThreadAllocatedBytes(id) - before;
+    assertTrue(allocated < 10_000, "allocated "+allocated+" bytes in 100000 turns");
+  }
+
+  @Test void matchIsDeterministic(){
+    Program red= new Parser(roamer).parse();
+    Program blue= new Parser("loop{ takeFuel; move; turnL; }").parse();
+    var first= Match.run(red, blue);
+    var second= Match.run(red, blue);
+    assertEquals(first.winner(), second.winner());
+    assertEquals(first.turns(), second.turns());
+    assertArrayEquals(first.redFuel(), second.redFuel());
+    assertArrayEquals(first.blueFuel(), second.blueFuel());
+    assertEquals(first.turns(), first.redFuel().length);
+    assertEquals(first.turns(), first.blueFuel().length);
+  }
+  @Test void matchEndsWhenARobotRunsOutOfFuel(){
+    Program idle= new Parser("loop{ wait; }").parse();
+    Program shielded= new Parser("shieldOn; loop{ wait; }").parse();
+    var res= Match.run(idle, shielded);
+    assertEquals(Match.Winner.Red, res.winner());
+    assertTrue(res.turns() < Match.defaultMaxTurns);
+    assertEquals(0, res.blueFuel()[res.turns() - 1]);
+    assertTrue(res.redFuel()[res.turns() - 1] > 0);
+  }
+  @Test void matchStopsAtMaxTurns(){
+    Program idle= new Parser("loop{ wait; }").parse();
+    var res= Match.run(idle, idle, Program::metered, 5);
+    assertEquals(Match.Winner.Draw, res.winner());
+    assertEquals(5, res.turns());
+    assertArrayEquals(new int[]{97, 94, 91, 88, 85}, res.redFuel());
+    assertThrows(IllegalArgumentException.class, ()->Match.run(idle, idle, Program::metered, -1));
+  }
+  static List<Tournament.Entry> entries(){
+    return List.of(
+      new Tournament.Entry("roamer", new Parser(roamer).parse()),
+      new Tournament.Entry("idle", new Parser("loop{ wait; }").parse()),
+      new Tournament.Entry("shielded", new Parser("shieldOn; loop{ wait; }").parse()),
+      new Tournament.Entry("collector", new Parser(
+        "loop{ if (eq(barrelFB, 0)) { if (eq(barrelLR, 0)) { takeFuel; } "
+        + "elif (lt(barrelLR, 0)) { turnL; } else { turnR; } } "
+        + "elif (lt(barrelFB, 0)) { turnAround; } else { move; } }").parse()));
+  }
+  //the pool is closed, so its workers do not outlive the test
+  static List<Tournament.Standing> run(Tournament t, int threads){
+    try (var pool= new ForkJoinPool(threads)){ return t.run(pool); }
+  }
+  @Test void tournamentPlaysEveryPairing(){
+    var t= new Tournament(entries(), 3, 2_000);
+    assertEquals(4 * 3 * 3, t.matches());
+    var ranking= run(t, 4);
+    assertEquals(4, ranking.size());
+    long wins= 0, losses= 0;
+    for (var s: ranking){
+      assertEquals(2 * 3 * 3, s.matches());
+      wins += s.wins();
+      losses += s.losses();
+    }
+    assertEquals(wins, losses);
+    assertEquals("collector", ranking.get(0).name());
+    assertEquals("roamer", ranking.get(3).name());
+    for (int i= 1; i < ranking.size(); i++){
+      assertTrue(ranking.get(i - 1).points() >= ranking.get(i).points());
+    }
+  }
+  @Test void tournamentDoesNotDependOnThreads(){
+    var one= run(new Tournament(entries(), 2, 2_000), 1);
+    var many= run(new Tournament(entries(), 2, 2_000), 8);
+    assertEquals(one.toString(), many.toString());
+  }
+  @Test void matchScopeEndsLateMatchesAsDraws() throws InterruptedException{
+    Program idle= new Parser("loop{ wait; }").parse();
+    Program shielded= new Parser("shieldOn; loop{ wait; }").parse();
+    try (var scope= new MatchScope(Match.defaultMaxTurns, Duration.ZERO)){
+      scope.fork(idle, shielded, 0);
+      var res= scope.next().resultNow();
+      assertEquals(Match.Winner.Draw, res.winner());
+      assertEquals(0, res.turns());
+      assertNull(scope.next());
+    }
+    try (var scope= new MatchScope(Match.defaultMaxTurns, Duration.ofMinutes(1))){
+      var f= scope.fork(idle, shielded, 0);
+      assertSame(f, scope.next());
+      assertEquals(Match.Winner.Red, f.resultNow().winner());
+    }
+  }
+  @Test void matchScopeCancelsOnShutdown() throws InterruptedException{
+    Program idle= new Parser("loop{ wait; }").parse();
+    var scope= new MatchScope(Match.defaultMaxTurns, Duration.ofMinutes(1));
+    scope.close();
+    assertTrue(scope.isShutdown());
+    assertThrows(java.util.concurrent.RejectedExecutionException.class, ()->scope.fork(idle, idle, 0));
+  }
+  @Test void virtualTournamentStopsOnceDecided() throws InterruptedException{
+    //the collector beats every idle, and idles draw: the last match can never be needed
+    var es= new ArrayList<Tournament.Entry>();
+    es.add(entries().get(3));
+    for (int i= 0; i < 4; i++){ es.add(new Tournament.Entry("idle"+i, entries().get(1).program())); }
+    var t= new Tournament(es, 2, 2_000);
+    var ranking= t.run(Duration.ofMinutes(1));
+    var leader= ranking.get(0);
+    assertEquals("collector", leader.name());
+    long played= 0;
+    for (var s: ranking){ played += s.matches(); }
+    assertTrue(played / 2 < t.matches(), "no match was cancelled");
+    for (var s: ranking.subList(1, ranking.size())){
+      assertTrue(s.points() + 3 * (2 * 4 * 2 - s.matches()) < leader.points(), s.toString());
+    }
+  }
+  @Test void seedsReproduceMatches(){
+    var es= entries();
+    Program collector= es.get(3).program(), idle= es.get(1).program();
+    var turns= new java.util.HashSet<Integer>();
+    for (long seed= 0; seed < 10; seed++){
+      var first= Match.run(collector, idle, Program::metered, 2_000, seed);
+      var again= Match.run(collector, idle, Program::metered, 2_000, seed);
+      assertEquals(first.turns(), again.turns());
+      assertArrayEquals(first.redFuel(), again.redFuel());
+      turns.add(first.turns());
+    }
+    assertTrue(turns.size() > 1, "every seed gave the same match");
+  }
+  @Test void tournamentSeedsComeFromTheRootSeed(){
+    var a= new Tournament(entries(), 3, 2_000, 42);
+    var b= new Tournament(entries(), 3, 2_000, 42);
+    var c= new Tournament(entries(), 3, 2_000, 43);
+    for (int k= 0; k < 3; k++){
+      assertEquals(a.seed(k), b.seed(k));
+      assertNotEquals(a.seed(k), c.seed(k));
+    }
+    assertEquals(run(a, 2).toString(), run(b, 3).toString());
+  }
+  @Test void variablesByNameAndBySlotAgree(){
+    var p= new Parser("loop{ $a = add($a, 2); wait; }").parse();
+    var seen= new ArrayList<List<Integer>>();
+    var world= new World(p, p, (program, budget)->{
+      var mine= new ArrayList<Integer>();
+      seen.add(mine);
+      return new Mind(){
+        Mind inner= program;
+        @Override public Mind execute(OuterWorld w){
+          mine.add(w.readVar("a"));
+          if (mine.size() == 2){ w.setVar("a", 100); }
+          inner= inner.execute(w);
+          return this;
+        }
+      };
+    });
+    for (int i= 0; i < 4; i++){ world.nextTurn(); }
+    assertEquals(Arrays.asList(null, 2, 102, 104), seen.get(0));
+  }
+  @Test void tournamentRunsStartAfresh() throws InterruptedException{
+    var t= new Tournament(entries(), 2, 2_000);
+    var first= run(t, 2).toString();
+    assertEquals(first, run(t, 2).toString());
+    var late= t.run(Duration.ofMinutes(1));
+    for (var s: run(t, 2)){ assertEquals(2 * 3 * 2, s.matches()); }
+    for (var s: late){ assertTrue(s.matches() <= 2 * 3 * 2); }
+  }
+  @Test void failingProgramLosesItsMatch(){
+    Program failing= new Parser("move; wait(div(1, sub(fuelLeft, fuelLeft)));").parse();
+    Program idle= new Parser("loop{ wait; }").parse();
+    var res= Match.run(failing, idle);
+    assertEquals(Match.Winner.Blue, res.winner());
+    assertEquals(2, res.turns());
+    assertEquals(Match.Winner.Red, Match.run(idle, failing).winner());
+    assertEquals(Match.Winner.Draw, Match.run(failing, failing).winner());
+    var es= new ArrayList<>(entries());
+    es.add(new Tournament.Entry("failing", failing));
+    var ranking= run(new Tournament(es, 1, 2_000), 2);
+    assertEquals("failing", ranking.get(4).name());
+    assertEquals(0, ranking.get(4).wins());
+  }
+  @Test void matchScopeTimesOnlyRunningMatches() throws InterruptedException{
+    var es= entries();
+    try (var scope= new MatchScope(2_000, Duration.ofMinutes(1), 1)){
+      var forked= new ArrayList<java.util.concurrent.Future<Match.Result>>();
+      for (var red: es){ for (var blue: es){ forked.add(scope.fork(red.program(), blue.program(), 7)); } }
+      for (int i= 0; i < forked.size(); i++){ assertNotNull(scope.next()); }
+      int i= 0;
+      for (var red: es){
+        for (var blue: es){
+          var expected= Match.run(red.program(), blue.program(), Program::metered, 2_000, 7);
+          assertEquals(expected.toString(), forked.get(i++).resultNow().toString());
+        }
+      }
+    }
+  }
+}
@@ -2,17 +2,29 @@ package tests;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.junit.jupiter.api.Test;
 
 import parser.ExamplePrograms;
+import parser.Budget;
+import parser.Bytecode;
+import parser.CompiledProgram;
+import parser.Interpreter;
+import parser.Machine;
+import parser.Mind;
+import parser.Parser;
 import parser.Program;
 import robotGame.OuterWorld;
+import robotGame.SensorFrame;
 
 class MockOuterWorld implements OuterWorld {
   boolean used = false;
@@ -167,4 +179,304 @@ class IntegrationInterpretedTests{
     p = assertNext(List.of("readBarrelLR: 0|output= 0","readBarrelFB: 0|output= -1",
         "doTurnAround"),p,m);
   }  
+
+  //Runs up to 300 turns with Program.execute, the Interpreter, the Machine,
+  //the CompiledProgram, the specialized and the optimized Program: the OuterWorld calls must be the same
+  void sameAsInterpreter(Program p){
+    var inputs= new ArrayList<Integer>();
+    for (int i= 0; i < 20_000; i++){ inputs.add(i * 7 % 13 - 6); }
+    var m1= new MockOuterWorld(inputs);
+    var m2= new MockOuterWorld(inputs);
+    var m3= new MockOuterWorld(inputs);
+    var m4= new MockOuterWorld(inputs);
+    var m5= new MockOuterWorld(inputs);
+    var m6= new MockOuterWorld(inputs);
+    var interpreter= new Interpreter(p);
+    var machine= Machine.of(p);
+    var compiled= CompiledProgram.compile(p).get();
+    var specialized= new Interpreter(p.specialized());
+    var optimized= Machine.of(p.optimized());
+    assertEquals(p.toString(), p.specialized().toString());
+    assertArrayEquals(p.toBytes(), p.specialized().toBytes());
+    for (int turn= 0; turn < 300; turn++){
+      p= p.execute(m1);
+      interpreter.execute(m2);
+      machine.execute(m3);
+      compiled.execute(m4);
+      specialized.execute(m5);
+      optimized.execute(m6);
+      assertEquals(m1.log, m2.log);
+      assertEquals(m1.log, m3.log);
+      assertEquals(m1.log, m4.log);
+      assertEquals(m1.log, m5.log);
+      assertEquals(m1.log, m6.log);
+      assertEquals(p.ss().isEmpty(), interpreter.done());
+      assertEquals(p.ss().isEmpty(), machine.done());
+      assertEquals(p.ss().isEmpty(), compiled.done());
+      if (!m1.used){ return; }
+      m1.resetTurn();
+      m2.resetTurn();
+      m3.resetTurn();
+      m4.resetTurn();
+      m5.resetTurn();
+      m6.resetTurn();
+    }
+  }
+  @Test void interpreterExamplePrograms(){
+    sameAsInterpreter(ExamplePrograms.leftRightMove());
+    sameAsInterpreter(ExamplePrograms.loopLeftRightMove());
+    sameAsInterpreter(ExamplePrograms.whileLeftRightMove());
+    sameAsInterpreter(ExamplePrograms.aimAndGo());
+    sameAsInterpreter(ExamplePrograms.aimAndGoLocVar());
+    sameAsInterpreter(ExamplePrograms.defaultProgramCode());
+  }
+  @Test void interpreterAllPrograms() throws Exception{
+    try (var files= Files.newDirectoryStream(Path.of("src/programs"), "*.prog")){
+      for (Path file: files){
+        if (file.getFileName().toString().contains("_bad")){ continue; }
+        sameAsInterpreter(new Parser(file).parse());
+      }
+    }
+  }
+
+  //A world that does not allocate, to measure the interpreter alone
+  static class QuietWorld implements OuterWorld{
+    boolean used;
+    int var;
+    int actions;
+    @Override public boolean used(){ return used; }
+    @Override public Integer readVar(String name){ return var; }//small ints are cached
+    @Override public void setVar(String name, int value){ var= value; }
+    @Override public void doMove(){ used= true; actions++; }
+    @Override public void doTurnL(){ used= true; actions++; }
+    @Override public void doTurnR(){ used= true; actions++; }
+    @Override public void doTurnAround(){ used= true; actions++; }
+    @Override public void doTakeFuel(){ used= true; actions++; }
+    @Override public void doWait(){ used= true; actions++; }
+    @Override public void setShield(boolean flag){}
+    @Override public int readFuelLeft(){ return 50; }
+    @Override public int readOppLR(){ return var % 3 - 1; }
+    @Override public int readOppFB(){ return 1; }
+    @Override public int readNumBarrels(){ return 2; }
+    @Override public int readBarrelLR(int index){ return index; }
+    @Override public int readBarrelFB(int index){ return -index; }
+    @Override public int readWallDist(){ return var % 5; }
+  }
+  @Test void interpreterDoesNotAllocate(){
+    assertNoAllocation(Interpreter::new);
+  }
+  @Test void machineDoesNotAllocate(){
+    assertNoAllocation(Machine::of);
+  }
+  @Test void compiledProgramDoesNotAllocate(){
+    var compiled= CompiledProgram.compile(new Parser("loop{ move; }").parse());
+    assertNoAllocation(p->CompiledProgram.compile(p).get());
+    var a= compiled.get();
+    var b= compiled.get();
+    var w= new QuietWorld();
+    a.execute(w);
+    assertEquals(1, w.actions);
+    assertFalse(b.done());//instances of the same class do not share state
+  }
+  @Test void compiledProgramLargeNumbers(){
+    var m= new MockOuterWorld(List.of());
+    var p= CompiledProgram.compile(new Parser(
+      "$a = add(2147483647, 1); $b = sub(-40000, 300); $c = div($b, -7); if (eq($a, -2147483648)) { move(div($c, 1000)); }").parse()).get();
+    for (int i= 0; i < 5; i++){ p.execute(m); m.resetUsed(); }
+    assertEquals(List.of("doMove","doMove","doMove","doMove","doMove"), m.log);
+    assertEquals(-2147483648, (int) m.map.get("a"));
+    assertEquals(5757, (int) m.map.get("c"));
+    assertTrue(p.done());
+  }
+  //A world keeping the variables in a frame, as RealOuterWorld does: no access by name
+  static class SlotWorld extends MockOuterWorld{
+    final int[] frame= new int[8];
+    SlotWorld(){ super(List.of()); }
+    @Override public Integer readVar(String name){ throw new Error("readVar "+name); }
+    @Override public void setVar(String name, int value){ throw new Error("setVar "+name); }
+    @Override public int readSlot(int slot, String name){ log.add("readSlot: "+slot+" $"+name); return frame[slot]; }
+    @Override public void setSlot(int slot, String name, int value){ log.add("setSlot: "+slot+" $"+name+"= "+value); frame[slot]= value; }
+  }
+  @Test void variablesUseSlots(){
+    String text= "$b = 3; $a = add($b, $c); loop{ $c = add($a, 1); if (gt($c, $b)) { move; } }";
+    var expected= List.of("setSlot: 0 $b= 3", "readSlot: 0 $b", "readSlot: 2 $c", "setSlot: 1 $a= 3",
+      "readSlot: 1 $a", "setSlot: 2 $c= 4", "readSlot: 2 $c", "readSlot: 0 $b", "doMove");
+    List<Function<Program,Mind>> engines= List.of(p->p, Interpreter::new, Machine::of,
+      Program::specialized, Program::optimized, p->CompiledProgram.compile(p).get(),
+      p->Program.fromBytes(p.toBytes()));
+    for (var engine: engines){
+      for (var p: List.of(new Parser(text).parse(), new Parser(text).parseIterative())){
+        var w= new SlotWorld();
+        engine.apply(p).execute(w);
+        assertEquals(expected, w.log);
+      }
+    }
+  }
+  @Test void sensorFrameReadsOncePerTurn(){
+    var p= new Parser("loop{ if (and(eq(barrelLR, 0), gt(barrelFB(1), oppLR))) { move(add(oppLR, barrelLR)); } else { turnL; } }").parse();
+    var m= new MockOuterWorld(List.of(0, 3, -1, 2, 1, -4, 2));
+    var frame= new SensorFrame(m);
+    p= p.execute(frame);
+    assertEquals(List.of("readBarrelLR: 0|output= 0","readBarrelFB: 1|output= 3","readOppLR|output= -1","doMove"), m.log);
+    assertEquals(5, frame.reads());
+    assertEquals(2, frame.saved());
+    m.resetTurn();
+    p= p.execute(frame.reset(m));//a new turn reads again
+    assertEquals(List.of("readBarrelLR: 0|output= 2","readBarrelFB: 1|output= 1","readOppLR|output= -4","doTurnL"), m.log);
+    assertEquals(8, frame.reads());
+    assertEquals(2, frame.saved());
+  }
+  //Sensors depend on the turn only, not on how many times they are read
+  static class TurnWorld extends QuietWorld{
+    final List<String> log= new ArrayList<>();
+    int turn;
+    int reads;
+    void next(){ turn++; used= false; }
+    private int sensor(int k){ reads++; return (turn * 7 + k * 3) % 11 - 5; }
+    @Override public void doMove(){ super.doMove(); log.add("doMove"); }
+    @Override public void doTurnL(){ super.doTurnL(); log.add("doTurnL"); }
+    @Override public void doTurnR(){ super.doTurnR(); log.add("doTurnR"); }
+    @Override public void doTurnAround(){ super.doTurnAround(); log.add("doTurnAround"); }
+    @Override public void doTakeFuel(){ super.doTakeFuel(); log.add("doTakeFuel"); }
+    @Override public void doWait(){ super.doWait(); log.add("doWait"); }
+    @Override public int readFuelLeft(){ return sensor(0) + 10; }
+    @Override public int readOppLR(){ return sensor(1); }
+    @Override public int readOppFB(){ return sensor(2); }
+    @Override public int readNumBarrels(){ return sensor(3) + 5; }
+    @Override public int readBarrelLR(int index){ return sensor(4 + index); }
+    @Override public int readBarrelFB(int index){ return sensor(5 + 2 * index); }
+    @Override public int readWallDist(){ return sensor(6) + 5; }
+  }
+  @Test void sensorFrameSameBehavior() throws Exception{
+    var programs= new ArrayList<>(List.of(ExamplePrograms.aimAndGo(), ExamplePrograms.aimAndGoLocVar(), ExamplePrograms.defaultProgramCode()));
+    programs.add(new Parser(Path.of("src/programs/s3_full.prog")).parse());
+    for (var p: programs){
+      var plain= new TurnWorld();
+      var cached= new TurnWorld();
+      var frame= new SensorFrame(cached);
+      Mind a= new Interpreter(p), b= new Interpreter(p);
+      for (int turn= 0; turn < 300; turn++){
+        a.execute(plain);
+        b.execute(frame.reset(cached));
+        plain.next();
+        cached.next();
+      }
+      assertEquals(plain.log, cached.log);
+      assertEquals(plain.reads, frame.reads());
+      assertEquals(cached.reads, frame.reads() - frame.saved());
+      boolean storesInVars= p == programs.get(1) || p == programs.get(2);//read each sensor once
+      assertEquals(storesInVars, frame.saved() == 0);
+    }
+  }
+  @Test void budgetStopsSpinningTurns(){
+    var p= new Parser("while(eq(0,0)){ $x = 1; }").parse();
+    var budget= new Budget(100);
+    var m= new MockOuterWorld(List.of());
+    p= p.execute(m, budget);
+    assertEquals(List.of("doWait"), m.log);
+    assertEquals(100, budget.steps());
+    assertEquals(1, budget.exhausted());
+    var interpreted= new Budget(100);
+    var mind= new Interpreter(p, interpreted);
+    for (int i= 0; i < 3; i++){ m.resetTurn(); mind.execute(m); }
+    assertEquals(List.of("doWait"), m.log);
+    assertEquals(300, interpreted.steps());
+    assertEquals(3, interpreted.exhausted());
+  }
+  @Test void budgetStopsSpinningCompiledTurns(){
+    var p= new Parser("move; while(eq(0,0)){ $x = add($x, 1); } turnL;").parse();
+    List<Function<Budget,Mind>> engines= List.of(b->Machine.of(p, b), b->CompiledProgram.metered(p).apply(b));
+    for (var engine: engines){
+      var budget= new Budget(100);
+      var mind= engine.apply(budget);
+      var m= new MockOuterWorld(List.of());
+      for (int i= 0; i < 3; i++){ mind= mind.execute(m); m.resetUsed(); }
+      assertEquals(List.of("doMove", "doWait", "doWait"), m.log);
+      assertEquals(200, budget.steps());
+      assertEquals(2, budget.exhausted());
+      assertEquals(202, (int) m.map.get("x"));//the body runs once more than the backward jumps
+    }
+  }
+  @Test void budgetResumesNextTurn(){
+    var p= new Parser("$a = 1; $b = 2; $c = 3; move; turnL;").parse();
+    var budget= new Budget(2);
+    var m= new MockOuterWorld(List.of());
+    Mind mind= p.metered(budget);
+    for (int i= 0; i < 3; i++){ mind= mind.execute(m); m.resetUsed(); }
+    assertEquals(List.of("doWait", "doMove", "doTurnL"), m.log);
+    assertEquals(3, (int) m.map.get("c"));
+    assertEquals(5, budget.steps());
+    assertEquals(1, budget.exhausted());
+    assertThrows(IllegalArgumentException.class, ()->new Budget(0));
+  }
+  @Test void programRunsLongLoops(){
+    //a loop in tail position used to nest one Block deeper per iteration
+    Mind p= new Parser("loop{ $a = add($a, 1); if (gt($a, 3)) { $a = 0; turnL; } else { while (lt($a, 2)) { $a = add($a, 1); move; } } }").parse();
+    var w= new QuietWorld();
+    for (int i= 0; i < 100_000; i++){ p= p.execute(w); w.used= false; }
+    assertEquals(100_000, w.actions);
+  }
+  @Test void programSnapshotsStayValid(){
+    //every turn shares most of the previous Program, which must not change
+    var p= new Parser("$a = 1; loop{ move(2); if (lt(oppLR, $a)) { turnL; } turnR; }").parse();
+    var inputs= new ArrayList<Integer>();
+    for (int i= 0; i < 100; i++){ inputs.add(i % 3 - 1); }
+    var m= new MockOuterWorld(inputs);
+    var snapshots= new ArrayList<Program>();
+    var texts= new ArrayList<String>();
+    for (int i= 0; i < 12; i++){ snapshots.add(p); texts.add(p.toString()); p= p.execute(m); m.resetUsed(); }
+    for (int i= 0; i < snapshots.size(); i++){
+      var snapshot= snapshots.get(i);
+      assertEquals(texts.get(i), snapshot.toString());
+      var copy= Program.fromBytes(snapshot.toBytes());//built from scratch, shares nothing
+      var m1= new MockOuterWorld(inputs);
+      var m2= new MockOuterWorld(inputs);
+      for (int j= 0; j < 10; j++){
+        snapshot= snapshot.execute(m1);
+        copy= copy.execute(m2);
+        m1.resetUsed();
+        m2.resetUsed();
+      }
+      assertEquals(m2.log, m1.log);
+    }
+  }
+  @Test void bytecodeListing(){
+    var code= Bytecode.compile(new Parser("while (lt($a, 3)) { $a = add($a, 1); move(2); } turnL;").parse());
+    assertEquals("""
+      0: load $a
+      2: push 3
+      4: ifNotLt 19
+      6: load $a
+      8: push 1
+      10: add
+      11: store $a
+      13: push 2
+      15: repeat
+      16: moveRepeat
+      17: jump 0
+      19: turnL
+      20: halt
+      """, code.toString());
+  }
+  void assertNoAllocation(java.util.function.Function<Program,Mind> engine){
+    var p= new Parser("""
+      loop {
+        $a = add($a, 1);
+        if (gt($a, 100)) { $a = 0; turnL; }
+        elif (lt(oppLR, 0)) { move(2); }
+        else { shieldOn; }
+        while (lt(wallDist, 2)) { wait; $a = add($a, 1); }
+        if (eq(barrelFB(1), -1)) { takeFuel; wait(barrelLR(2)); }
+      }""").parse();
+    Mind mind= engine.apply(p);
+    var w= new QuietWorld();
+    var mx= (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long id= Thread.currentThread().threadId();
+    for (int i= 0; i < 20_000; i++){ mind= mind.execute(w); w.used= false; }
+    long before= mx.getThreadAllocatedBytes(id);
+    for (int i= 0; i < 100_000; i++){ mind= mind.execute(w); w.used= false; }
+    long allocated= mx.getThreadAllocatedBytes(id) - before;
+    assertEquals(120_000, w.actions);
+    assertTrue(allocated < 10_000, "allocated "+allocated+" bytes in 100000 turns");
+  }
 }
@@ -3,14 +3,17 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 
 import org.junit.jupiter.api.Test;
 
 import parser.Parser;
 import parser.ParserFailureException;
 import parser.Program;
+import parser.ProgramCache;
 
 class IntegrationParserTests {
   
@@ -49,6 +52,104 @@ class IntegrationParserTests {
   @Test void p3_testFull(){     ok("s3_full");    }
 
   
+  @Test void p3_testFullChannel() throws IOException{
+    var input=    Path.of("src","programs","s3_full.prog");
+    var expected= Path.of("src","testResults","s3_full.txt");
+    try (var channel= FileChannel.open(input)){
+      assertEquals(noIndent(readFileStr(expected)),noIndent(new Parser(channel).parse()));
+    }
+  }
+  @Test void p3_testLargeFileMapped() throws IOException{
+    String full= readFileStr(Path.of("src","programs","s3_full.prog"));
+    Path large= Files.createTempFile("large", ".prog");
+    try {
+      Files.writeString(large, (full + "\n").repeat(500));
+      Program prog= new Parser(large).parse();
+      assertEquals(500, prog.ss().size());
+      assertEquals(noIndent(new Parser(full).parse().ss().get(0)), noIndent(prog.ss().get(499)));
+    }
+    finally { Files.delete(large); }
+  }
+
+  @Test void parseAllPrograms(){
+    var results= Parser.parseAll(Path.of("src","programs"));
+    assertEquals(29, results.size());
+    results.forEach((path,res)->{
+      String name= path.getFileName().toString().replace(".prog","");
+      assertEquals(!name.contains("_bad"), res.ok(), name);
+      if (!res.ok()){ return; }
+      var expected= Path.of("src","testResults",name+".txt");
+      assertEquals(noIndent(readFileStr(expected)),noIndent(res.program()));
+    });
+  }
+
+  @Test void programCacheHitsAndMisses() throws IOException{
+    Path file= Files.createTempFile("cached", ".prog");
+    try {
+      Files.writeString(file, "move; turnL;");
+      var cache= new ProgramCache(2);
+      Program first= cache.get(file);
+      assertSame(first, cache.get(file));
+      assertEquals(1, cache.misses());
+      assertEquals(1, cache.hits());
+      Files.writeString(file, "move; turnL; turnR;");
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+      Program second= cache.get(file);
+      assertEquals(3, second.ss().size());
+      assertEquals(2, cache.misses());
+      assertEquals(1, cache.size());
+    }
+    finally { Files.delete(file); }
+  }
+  @Test void programCacheEvictsLeastRecentlyUsed(){
+    var cache= new ProgramCache(2);
+    var simple= Path.of("src","programs","s0_simple.prog");
+    var full= Path.of("src","programs","s0_full.prog");
+    var provided= Path.of("src","programs","s0_provided.prog");
+    Program p= cache.get(simple);
+    cache.get(full);
+    cache.get(simple);
+    cache.get(provided);//evicts full
+    assertSame(p, cache.get(simple));
+    cache.get(full);
+    assertEquals(4, cache.misses());
+    assertEquals(2, cache.hits());
+    assertEquals(2, cache.size());
+  }
+
+  @Test void binaryRoundTrip(){
+    Parser.parseAll(Path.of("src","programs")).forEach((path,res)->{
+      if (!res.ok()){ return; }
+      String name= path.getFileName().toString().replace(".prog","");
+      Program decoded= Program.fromBytes(res.program().toBytes());
+      assertEquals(res.program().ss(), decoded.ss());
+      var expected= Path.of("src","testResults",name+".txt");
+      assertEquals(noIndent(readFileStr(expected)),noIndent(decoded));
+    });
+  }
+  @Test void binaryNumbers(){
+    var p= new Parser("move(add(-2147483648, 2147483647)); wait(sub(0, -1));").parse();
+    assertEquals(p.ss(), Program.fromBytes(p.toBytes()).ss());
+  }
+  @Test void binaryInvalid(){
+    byte[] bytes= new Parser("move;").parse().toBytes();
+    assertThrows(IllegalArgumentException.class, ()->Program.fromBytes(new byte[]{1,2,3}));
+    assertThrows(IllegalArgumentException.class,
+      ()->Program.fromBytes(java.util.Arrays.copyOf(bytes, bytes.length - 1)));
+    byte[] deep= new byte[1_000_010];//magic, no names, one if, a million nots
+    System.arraycopy(bytes, 0, deep, 0, 4);
+    deep[4]= 0; deep[5]= 1; deep[6]= 13;
+    java.util.Arrays.fill(deep, 7, deep.length, (byte) 69);
+    var e= assertThrows(IllegalArgumentException.class, ()->Program.fromBytes(deep));
+    assertTrue(e.getMessage().contains("nested too deeply"), e.getMessage());
+  }
+  @Test void binaryDepthLimit(){
+    var ok= new Parser("wait("+"add(1, ".repeat(998)+"1"+")".repeat(998)+");").parseIterative();
+    assertEquals(ok, Program.fromBytes(ok.toBytes()));
+    var deep= new Parser("wait("+"add(1, ".repeat(999)+"1"+")".repeat(999)+");").parseIterative();
+    assertThrows(IllegalArgumentException.class, ()->deep.toBytes());
+  }
+
   static String readFileStr(Path p){
     try { return Files.readString(p); }
     catch (IOException e) { throw new UncheckedIOException(e); }
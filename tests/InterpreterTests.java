@@ -1,9 +1,16 @@
 package tests;
+import parser.Budget;
+import parser.CompiledProgram;
+import parser.Interpreter;
+import parser.Machine;
+import parser.Mind;
 import parser.Parser;
+import parser.Program;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.List;
+import java.util.function.Function;
 
 import org.junit.jupiter.api.Test;
 class InterpreterTests{
@@ -18,6 +25,28 @@ class InterpreterTests{
       m.resetUsed(); 
     }    
     assertEquals(expected,m.log);
+    assertEquals(expected,interpreted(expected,inputs,text,Interpreter::new));
+    assertEquals(expected,interpreted(expected,inputs,text,Machine::of));
+    assertEquals(expected,interpreted(expected,inputs,text,Program::specialized));
+    assertEquals(expected,interpreted(expected,inputs,text,Program::optimized));
+    assertEquals(expected,interpreted(expected,inputs,text,p->p.metered(new Budget())));
+    assertEquals(expected,interpreted(expected,inputs,text,p->new Interpreter(p,new Budget())));
+    assertEquals(expected,interpreted(expected,inputs,text,p->CompiledProgram.compile(p).get()));
+    assertEquals(expected,interpreted(expected,inputs,text,p->Machine.of(p,new Budget())));
+    assertEquals(expected,interpreted(expected,inputs,text,p->CompiledProgram.metered(p).apply(new Budget())));
+  }
+  
+  //The same rounds, run by another Mind (Interpreter, Machine) instead of Program.execute
+  List<String> interpreted(List<String> expected, List<Integer> inputs, String text, Function<Program,Mind> engine){
+    long rounds= expected.stream().filter(s->s.startsWith("do")).count();
+    Mind mind= engine.apply(new Parser(text).parse());
+    var m= new MockOuterWorld(inputs);
+    if(rounds == 0){ mind= mind.execute(m); }
+    while(rounds-->0){
+      mind= mind.execute(m);
+      m.resetUsed(); 
+    }
+    return m.log;
   }
   
   void validWithAss(List<String> expected, List<Integer> inputs, String text){
@@ -34,6 +63,15 @@ class InterpreterTests{
       mAss.resetUsed();
     }    
     assertEquals(expected,m.log);
+    assertEquals(expected,interpreted(expected,inputs,text,Interpreter::new));
+    assertEquals(expected,interpreted(expected,inputs,text,Machine::of));
+    assertEquals(expected,interpreted(expected,inputs,text,Program::specialized));
+    assertEquals(expected,interpreted(expected,inputs,text,Program::optimized));
+    assertEquals(expected,interpreted(expected,inputs,text,p->p.metered(new Budget())));
+    assertEquals(expected,interpreted(expected,inputs,text,p->new Interpreter(p,new Budget())));
+    assertEquals(expected,interpreted(expected,inputs,text,p->CompiledProgram.compile(p).get()));
+    assertEquals(expected,interpreted(expected,inputs,text,p->Machine.of(p,new Budget())));
+    assertEquals(expected,interpreted(expected,inputs,text,p->CompiledProgram.metered(p).apply(new Budget())));
   }
   
   //----------Part0
@@ -11,10 +11,14 @@ class ParserTests{
   void valid(String expected,String text){
     String res= new Parser(text).parse().toString();
     assertEquals("Program["+expected+"]",res);
+    assertEquals(res,new Parser(text).parseIterative().toString());
   }
   void invalid(String text){
+    String msg= null;
     try{new Parser(text).parse(); fail("Exeception expected");}
-    catch(ParserFailureException pfe){/*expected*/}
+    catch(ParserFailureException pfe){ msg= pfe.getMessage(); }
+    try{new Parser(text).parseIterative(); fail("Exeception expected");}
+    catch(ParserFailureException pfe){ assertEquals(msg,pfe.getMessage()); }
   }
   //----------Part0
   @Test void p0_moveAction(){ valid("Move","move;"); }
@@ -79,4 +83,95 @@ class ParserTests{
   @Test void p3_variableAssHaveValue(){ invalid("$a = ;"); }
   @Test void p3_invalidVarNameDigits(){ invalid("%a1 = 3; move($b2c);"); }
   @Test void p3_variableAsCondition(){ invalid("if($a){wait(3);}"); }
-}
\ No newline at end of file
+  //----------Source positions
+  @Test void pos_errorLineAndColumn(){
+    var exc= assertThrows(ParserFailureException.class,
+      ()->new Parser("move;\nturnL;\n  turnRight;").parse());
+    assertEquals(3, exc.line());
+    assertEquals(3, exc.column());
+    assertTrue(exc.getMessage().endsWith("at line 3, position 3"));
+  }
+  @Test void pos_errorOnFirstToken(){
+    for (String text: new String[]{"turnRight;", "}", "42;"}){
+      var exc= assertThrows(ParserFailureException.class, ()->new Parser(text).parse());
+      assertEquals(1, exc.line());
+      assertEquals(1, exc.column());
+      var iterative= assertThrows(ParserFailureException.class, ()->new Parser(text).parseIterative());
+      assertEquals(exc.column(), iterative.column());
+    }
+  }
+  @Test void pos_spanOfStatements(){
+    var p= new Parser("move;\n  if (lt(3,4)) {\n    wait;\n  }").parse();
+    var ifSpan= p.spans().spanOf(p.ss().get(1));
+    assertEquals(2, ifSpan.line());
+    assertEquals(3, ifSpan.column());
+    assertEquals("if (lt(3,4)) {\n    wait;\n  }", "move;\n  if (lt(3,4)) {\n    wait;\n  }".substring(ifSpan.start(), ifSpan.end()));
+  }
+  //----------Deep nesting, parsed without recursion
+  //the ASTs are too deep for the recursive toString, so only the spans are checked
+  @Test void deep_nestedExpressions(){
+    int depth= 20_000;
+    String text= "move(" + "add(1, ".repeat(depth) + "2" + ")".repeat(depth) + ");";
+    var p= new Parser(text).parseIterative();
+    assertEquals(1, p.ss().size());
+    assertEquals(2 * depth + 2, p.spans().size());//Move, the Adds and the Nums
+    var span= p.spans().spanOf(p.ss().get(0));
+    assertEquals(0, span.start());
+    assertEquals(text.length(), span.end());
+  }
+  @Test void deep_nestedBlocksAndConditions(){
+    int depth= 20_000;
+    String text= "if (not(lt(1, 2))) {\n".repeat(depth) + "move;" + "} else { wait; }\n".repeat(depth);
+    var p= new Parser(text).parseIterative();
+    assertEquals(1, p.ss().size());
+    assertEquals(8 * depth + 1, p.spans().size());//If, Not, Lt, 2 Nums, 2 Blocks and Wait per level
+    var span= p.spans().spanOf(p.ss().get(0));
+    assertEquals(0, span.start());
+    assertEquals(text.length() - 1, span.end());
+  }
+  @Test void deep_sameSpansAsRecursive(){
+    String text= "move;\n if (lt(3,4)) {\n wait(add($a, 2));\n } elif (eq(1,1)) { turnL; } else { {turnR;} }";
+    var rec= new Parser(text).parse();
+    var it= new Parser(text).parseIterative();
+    assertEquals(rec.toString(), it.toString());
+    for (int i= 0; i < rec.ss().size(); i++){
+      assertEquals(rec.spans().spanOf(rec.ss().get(i)), it.spans().spanOf(it.ss().get(i)));
+    }
+  }
+  @Test void deep_blockStatementSpannedOnce(){
+    var rec= new Parser("{ move; }").parse();
+    var it= new Parser("{ move; }").parseIterative();
+    assertEquals(2, rec.spans().size());//the Block and the Move
+    assertEquals(2, it.spans().size());
+  }
+  @Test void programsAreValues(){
+    String text= "move; if (lt(oppLR, 2)) { wait(3); } else { $a = add($a, 1); }";
+    var a= new Parser(text).parse();
+    var b= new Parser(text).parseIterative();
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertNotEquals(a, new Parser("move;").parse());
+  }
+  //----------Optimizer
+  void optimized(String expected,String text){
+    var p= new Parser(text).parse();
+    assertEquals("Program["+expected+"]",p.optimized().toString());
+    assertEquals(p.optimized().toString(),p.optimized().optimized().toString());
+  }
+  @Test void opt_constantArithmetic(){ optimized("Wait[Num[2]]", "wait(div(add(3, 5), sub(mul(2,2),sub(5, 5))));"); }
+  @Test void opt_divisionByZeroIsKept(){ optimized("Wait[Div[Num[3], Num[0]]]", "wait(div(add(1,2), sub(5, 5)));"); }
+  @Test void opt_neutralElements(){ optimized("Move[Add[OppLR, FuelLeft]]", "move(add(mul(1, sub(oppLR, 0)), div(add(0, fuelLeft), 1)));"); }
+  @Test void opt_zeroOnlyIfPure(){ optimized("Ass[$a= Num[0]], Ass[$b= Mul[FuelLeft, Num[0]]], Ass[$c= Num[0]]", "$a = mul($a, 0); $b = mul(fuelLeft, 0); $c = sub(add($a, 1), add($a, 1));"); }
+  @Test void opt_sensorsAreNeverDropped(){ optimized("If[Lt[Sub[OppLR, OppLR], Num[1]], [Wait]]", "if (lt(sub(oppLR, oppLR), 1)) { wait; }"); }
+  @Test void opt_ifWithConstantCondition(){ optimized("Move, Wait, TurnR", "move; if (lt(3,4)) { wait; } else { turnL; } if (not(lt(3,4))) { turnL; } elif (gt(10,2)) { turnR; }"); }
+  @Test void opt_whileWithConstantCondition(){ optimized("Loop[Move], While[Eq[FuelLeft, FuelLeft], [Wait]]", "while (eq(2, 2)) { move; } while (eq(fuelLeft, fuelLeft)) { wait; }"); }
+  @Test void opt_whileFalseIsRemoved(){ optimized("Wait", "while (gt(1, 2)) { move; } wait;"); }
+  @Test void opt_andOrWithConstants(){ optimized("If[Or[Lt[WallDist, Num[3]], And[Gt[OppFB, Num[0]], False]], [Wait]]", "if (or(and(lt(wallDist, 3), eq(1, 1)), and(gt(oppFB, 0), gt(1, 2)))) { wait; }"); }
+  @Test void opt_pureSideOfDecidedAndOr(){ optimized("Move", "if (or(lt($a, 3), eq(1, 1))) { move; } if (and(gt($a, $b), lt(2, 1))) { wait; }"); }
+  @Test void opt_doubleNegation(){ optimized("If[Lt[FuelLeft, Num[3]], [Wait]]", "if (not(not(lt(fuelLeft, 3)))) { wait; }"); }
+  @Test void opt_constantCountsAndIndexes(){ optimized("Move, Wait[Num[2]], Move[BarrelLR], Wait[BarrelFB[Num[1]]]", "move(1); wait(add(1,1)); move(barrelLR(sub(0, 3))); wait(barrelFB(1));"); }
+  @Test void opt_emptiedBlockKeepsItsIf(){ optimized("If[Lt[FuelLeft, Num[3]], [If[False, [Wait]]]]", "if (lt(fuelLeft, 3)) { if (lt(4, 3)) { wait; } }"); }
+  @Test void opt_emptiedBlockKeepsItsWhile(){ optimized("While[Lt[FuelLeft, Num[3]], [If[False, [Wait]]]], If[Gt[OppLR, Num[0]], [If[False, [Wait]]], [Move]]", "while (lt(fuelLeft, 3)) { if (gt(1, 2)) { move; } } if (gt(oppLR, 0)) { if (eq(1, 2)) { wait; } } else { move; }"); }
+  @Test void opt_emptiedPureIfAndWhileAreDropped(){ optimized("Wait", "if (lt($a, 3)) { if (lt(4, 3)) { wait; } } else { while (gt(1, 2)) { move; } } while (gt($a, $b)) { if (gt(1, 2)) { move; } } wait;"); }
+  @Test void opt_allProgramsPruned(){ optimized("", "if (lt(4, 3)) { wait; }"); }
+}